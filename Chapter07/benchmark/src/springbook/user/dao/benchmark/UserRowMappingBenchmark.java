@@ -0,0 +1,124 @@
+package springbook.user.dao.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import springbook.user.dao.UserDaoJdbc;
+import springbook.user.domain.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// users 테이블 전체를 읽으면서 행마다 컬럼 이름으로 찾는 매퍼와 미리 찾은 인덱스로 읽는 매퍼를 비교한다.
+// HSQL의 이름 검색 비용은 MySQL Connector/J와 다르므로 절대값보다 차이와 gc.alloc.rate.norm을 본다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UserRowMappingBenchmark {
+    public enum MapperType {
+        BY_NAME {
+            @Override
+            RowMapper<User> create() {
+                return (resultSet, rowNum) -> {
+                    User user = new User();
+                    user.setId(resultSet.getString("id"));
+                    user.setName(resultSet.getString("name"));
+                    user.setPassword(resultSet.getString("password"));
+                    user.setLevel(springbook.user.domain.Level.valueOf(resultSet.getInt("level")));
+                    user.setLogin(resultSet.getInt("login"));
+                    user.setRecommend(resultSet.getInt("recommend"));
+                    user.setEmail(resultSet.getString("email"));
+                    return user;
+                };
+            }
+        },
+        BY_INDEX {
+            @Override
+            RowMapper<User> create() {
+                return UserDaoJdbc.userRowMapper();
+            }
+        };
+
+        abstract RowMapper<User> create();
+    }
+
+    @State(Scope.Benchmark)
+    public static class UsersTable {
+        @Param({"1000000"})
+        public int rows;
+
+        EmbeddedDatabase database;
+        JdbcTemplate jdbcTemplate;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = new EmbeddedDatabaseBuilder()
+                    .generateUniqueName(true)
+                    .setType(EmbeddedDatabaseType.HSQL)
+                    .build();
+            jdbcTemplate = new JdbcTemplate(database);
+            jdbcTemplate.setFetchSize(1000);
+            jdbcTemplate.execute("CREATE TABLE users (id VARCHAR(10) PRIMARY KEY, name VARCHAR(20) NOT NULL, "
+                    + "password VARCHAR(10) NOT NULL, level TINYINT NOT NULL, login INT NOT NULL, "
+                    + "recommend INT NOT NULL, email VARCHAR(30) NOT NULL)");
+
+            List<Object[]> batch = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                batch.add(new Object[] { "u" + i, "name" + i, "pw" + i % 100, i % 3 + 1, i % 100, i % 50,
+                        "user" + i + "@ksug.org" });
+                if (batch.size() == 10000 || i == rows - 1) {
+                    jdbcTemplate.batchUpdate("INSERT INTO users VALUES(?, ?, ?, ?, ?, ?, ?)", batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.shutdown();
+        }
+    }
+
+    @Param
+    public MapperType mapper;
+
+    @Benchmark
+    public void scanAll(UsersTable table, Blackhole blackhole) {
+        RowMapper<User> rowMapper = mapper.create();
+        int[] rowNum = { 0 };
+        table.jdbcTemplate.query("SELECT * FROM users",
+                (RowCallbackHandler)resultSet -> blackhole.consume(rowMapper.mapRow(resultSet, rowNum[0]++)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserRowMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
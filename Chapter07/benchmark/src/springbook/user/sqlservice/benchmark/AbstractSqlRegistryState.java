@@ -0,0 +1,35 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+import springbook.user.sqlservice.SqlRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 측정할 레지스트리와 키 개수는 하위 클래스의 @Param으로 정한다.
+public abstract class AbstractSqlRegistryState {
+    protected SqlRegistry sqlRegistry;
+    protected String[] keys;
+    private final List<Runnable> destroyers = new ArrayList<>();
+
+    protected void setUp(SqlRegistryType type, int size) {
+        sqlRegistry = type.create(destroyers);
+        keys = new String[size];
+        // 키마다 등록하면 복사하며 쓰는 레지스트리는 준비에만 O(N^2)이 걸리므로 sqlmap을 읽을 때처럼 한 번에 등록한다.
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = "KEY" + i;
+            sqlmap.put(keys[i], "SELECT * FROM sqlmap WHERE id = " + i);
+        }
+        sqlRegistry.registerSql(sqlmap);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        destroyers.forEach(Runnable::run);
+        destroyers.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import springbook.user.sqlservice.SqlNotFoundException;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindSqlBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RegistryState extends AbstractSqlRegistryState {
+        @Param
+        public SqlRegistryType registry;
+
+        @Param({"10", "100", "1000", "10000", "100000"})
+        public int size;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            setUp(registry, size);
+        }
+    }
+
+    @Benchmark
+    public String findSql(RegistryState state, KeyCursor cursor) throws SqlNotFoundException {
+        return state.sqlRegistry.findSql(cursor.next(state.keys));
+    }
+}
@@ -0,0 +1,20 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// 스레드마다 다른 위치에서 시작해 키를 고르게 돌아가며 꺼낸다.
+// 키 개수와 서로소인 간격으로 건너뛰므로 순차 접근의 캐시 효과를 피하면서도 조회마다 난수를 만들지 않는다.
+@State(Scope.Thread)
+public class KeyCursor {
+    private static final int STRIDE = 7919;
+
+    private int index = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+
+    public String next(String[] keys) {
+        index = (int)((index + (long)STRIDE) % keys.length);
+        return keys[index];
+    }
+}
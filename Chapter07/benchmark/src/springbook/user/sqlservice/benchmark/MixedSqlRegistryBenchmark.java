@@ -0,0 +1,60 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedSqlRegistryBenchmark {
+    static final String UPDATED_SQL = "SELECT * FROM sqlmap WHERE id = ? FOR UPDATE";
+
+    @State(Scope.Benchmark)
+    public static class RegistryState extends AbstractSqlRegistryState {
+        // 수정을 지원하는 레지스트리만 측정한다.
+        @Param({"CONCURRENT_HASH_MAP", "COPY_ON_WRITE", "VERSIONED", "EMBEDDED_DB", "CACHING"})
+        public SqlRegistryType registry;
+
+        @Param({"10", "1000", "100000"})
+        public int size;
+
+        // 전체 연산 중 updateSql의 비율(%)
+        @Param({"1", "10", "50"})
+        public int updatePercent;
+
+        UpdatableSqlRegistry updatableSqlRegistry;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            setUp(registry, size);
+            updatableSqlRegistry = (UpdatableSqlRegistry)sqlRegistry;
+        }
+    }
+
+    @Benchmark
+    public String readWrite(RegistryState state, KeyCursor cursor) throws SqlNotFoundException {
+        String key = cursor.next(state.keys);
+        if (ThreadLocalRandom.current().nextInt(100) < state.updatePercent) {
+            state.updatableSqlRegistry.updateSql(key, UPDATED_SQL);
+            return key;
+        }
+        return state.sqlRegistry.findSql(key);
+    }
+}
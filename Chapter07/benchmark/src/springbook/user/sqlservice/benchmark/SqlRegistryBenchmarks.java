@@ -0,0 +1,24 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// 모든 레지스트리 벤치마크를 1, 4, 16, 64 스레드로 차례로 실행한다.
+// GCProfiler의 gc.alloc.rate.norm 값이 조회 한 번에 할당하는 바이트 수다.
+// 인자로 정규식을 주면 그에 맞는 벤치마크만 실행한다. 예) FindSqlBenchmark
+public class SqlRegistryBenchmarks {
+    static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : SqlRegistryBenchmarks.class.getPackage().getName() + ".*";
+        for (int threads : THREADS) {
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package springbook.user.sqlservice.benchmark;
+
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import springbook.user.sqlservice.ConcurrentHashMapSqlRegistry;
+import springbook.user.sqlservice.CopyOnWriteSqlRegistry;
+import springbook.user.sqlservice.HashMapSqlRegistry;
+import springbook.user.sqlservice.SimpleSqlService;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlRegistry;
+import springbook.user.sqlservice.SqlRetrievalFailureException;
+import springbook.user.sqlservice.updatable.CachingSqlRegistry;
+import springbook.user.sqlservice.updatable.EmbeddedDbSqlRegistry;
+import springbook.user.sqlservice.updatable.VersionedSqlRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 새 레지스트리를 측정하려면 여기에 상수를 하나 추가하면 된다.
+public enum SqlRegistryType {
+    HASH_MAP {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new HashMapSqlRegistry();
+        }
+    },
+    CONCURRENT_HASH_MAP {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new ConcurrentHashMapSqlRegistry();
+        }
+    },
+    COPY_ON_WRITE {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new CopyOnWriteSqlRegistry();
+        }
+    },
+    VERSIONED {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new VersionedSqlRegistry();
+        }
+    },
+    EMBEDDED_DB {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return createEmbeddedDbSqlRegistry(destroyers);
+        }
+    },
+    CACHING {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new CachingSqlRegistry(createEmbeddedDbSqlRegistry(destroyers));
+        }
+    },
+    SIMPLE_SQL_SERVICE {
+        @Override
+        public SqlRegistry create(List<Runnable> destroyers) {
+            return new SimpleSqlServiceRegistry();
+        }
+    };
+
+    // 레지스트리가 사용한 자원을 정리할 작업은 destroyers에 추가한다.
+    public abstract SqlRegistry create(List<Runnable> destroyers);
+
+    private static EmbeddedDbSqlRegistry createEmbeddedDbSqlRegistry(List<Runnable> destroyers) {
+        EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.HSQL)
+                .addScript("classpath:springbook/user/sqlservice/updatable/sqlRegistrySchema.sql")
+                .build();
+        destroyers.add(db::shutdown);
+
+        EmbeddedDbSqlRegistry sqlRegistry = new EmbeddedDbSqlRegistry();
+        sqlRegistry.setDataSource(db);
+        return sqlRegistry;
+    }
+
+    // SimpleSqlService는 레지스트리가 아니므로 같은 조건에서 비교할 수 있도록 SqlRegistry로 감싼다.
+    private static class SimpleSqlServiceRegistry implements SqlRegistry {
+        private final Map<String, String> sqlMap = new HashMap<>();
+        private final SimpleSqlService sqlService = new SimpleSqlService();
+
+        SimpleSqlServiceRegistry() {
+            sqlService.setSqlMap(sqlMap);
+        }
+
+        @Override
+        public void registerSql(String key, String sql) {
+            sqlMap.put(key, sql);
+        }
+
+        @Override
+        public String findSql(String key) throws SqlNotFoundException {
+            try {
+                return sqlService.getSql(key);
+            } catch (SqlRetrievalFailureException e) {
+                throw new SqlNotFoundException(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -4,22 +4,31 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.SimpleDriverDataSource;
 import org.springframework.mail.MailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.util.StringUtils;
 import springbook.user.dao.UserDao;
 import springbook.user.service.DummyMailSender;
 import springbook.user.service.UserService;
 import springbook.user.service.UserServiceTest;
 import springbook.user.sqlservice.EnableSqlService;
 import springbook.user.sqlservice.SqlMapConfig;
+import springbook.user.sqlservice.SqlService;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Driver;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 @EnableTransactionManagement
@@ -39,6 +48,25 @@ public class AppContext implements SqlMapConfig {
     @Value("${db.password}")
     String password;
 
+    @Value("${sqlservice.journal.dir:}")
+    String sqlJournalDirectory;
+
+    @Value("${sqlservice.snapshot:}")
+    String sqlSnapshot;
+
+    @Value("${sqlservice.validate:false}")
+    boolean validateSql;
+
+    @Value("${sqlservice.watch:false}")
+    boolean watchSqlMap;
+
+    @Value("${sqlservice.async:false}")
+    boolean asyncSqlLoading;
+
+    // 네임스페이스=sqlmap 위치를 쉼표로 구분한다. 예: group=classpath:springbook/group/sqlmap.xml
+    @Value("${sqlservice.namespaces:}")
+    String sqlNamespaces;
+
     @Bean
     public static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
         return new PropertySourcesPlaceholderConfigurer();
@@ -46,6 +74,10 @@ public class AppContext implements SqlMapConfig {
 
     @Bean
     public DataSource dataSource() {
+        return createDataSource();
+    }
+
+    private SimpleDriverDataSource createDataSource() {
         SimpleDriverDataSource dataSource = new SimpleDriverDataSource();
 
         dataSource.setDriverClass(this.driverClass);
@@ -68,6 +100,64 @@ public class AppContext implements SqlMapConfig {
         return new ClassPathResource("sqlmap.xml", UserDao.class);
     }
 
+    @Override
+    public Resource getCompiledSqlMapResource() {
+        return new ClassPathResource("sqlmap.bin", UserDao.class);
+    }
+
+    @Override
+    public Resource getSqlMapSchemaResource() {
+        return new ClassPathResource("sqlmap.xsd", SqlService.class);
+    }
+
+    // MySQL 드라이버는 기본적으로 prepareStatement를 클라이언트에서 흉내만 내므로 서버에서 준비하도록 지정한다.
+    // 검증에만 쓰는 DataSource라서 애플리케이션의 커넥션 설정에는 영향을 주지 않는다.
+    @Override
+    public DataSource getSqlValidationDataSource() {
+        if (!this.validateSql) {
+            return null;
+        }
+        SimpleDriverDataSource dataSource = createDataSource();
+        Properties properties = new Properties();
+        properties.setProperty("useServerPrepStmts", "true");
+        dataSource.setConnectionProperties(properties);
+        return dataSource;
+    }
+
+    @Override
+    public boolean isWatchSqlMap() {
+        return this.watchSqlMap;
+    }
+
+    @Override
+    public boolean isAsyncSqlLoading() {
+        return this.asyncSqlLoading;
+    }
+
+    @Override
+    public Map<String, Resource> getNamespaceSqlMapResources() {
+        ResourceLoader resourceLoader = new DefaultResourceLoader();
+        Map<String, Resource> sqlmaps = new LinkedHashMap<>();
+        for (String namespace : StringUtils.commaDelimitedListToStringArray(this.sqlNamespaces)) {
+            String[] sqlmap = StringUtils.split(namespace.trim(), "=");
+            if (sqlmap == null) {
+                throw new IllegalArgumentException("sqlservice.namespaces는 네임스페이스=sqlmap 위치 형식이어야 합니다: " + namespace);
+            }
+            sqlmaps.put(sqlmap[0].trim(), resourceLoader.getResource(sqlmap[1].trim()));
+        }
+        return sqlmaps;
+    }
+
+    @Override
+    public Path getSqlSnapshotPath() {
+        return this.sqlSnapshot.isEmpty() ? null : Paths.get(this.sqlSnapshot);
+    }
+
+    @Override
+    public Path getSqlUpdateJournalDirectory() {
+        return this.sqlJournalDirectory.isEmpty() ? null : Paths.get(this.sqlJournalDirectory);
+    }
+
     @Configuration
     @Profile("production")
     public static class ProductionAppContext {
@@ -84,9 +174,12 @@ public class AppContext implements SqlMapConfig {
     @Profile("test")
     public static class TestAppContext {
 
+        // 실패하기 전에 이미 DB에 반영된 사용자가 있어야 전체가 롤백되는지 확인할 수 있다.
         @Bean
         public UserService testUserService() {
-            return new UserServiceTest.TestUserService();
+            UserServiceTest.TestUserService testUserService = new UserServiceTest.TestUserService();
+            testUserService.setUpgradeBatchSize(1);
+            return testUserService;
         }
 
         @Bean
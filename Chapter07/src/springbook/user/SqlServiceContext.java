@@ -3,19 +3,32 @@ package springbook.user;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
-import org.springframework.oxm.Unmarshaller;
-import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.jmx.support.RegistrationPolicy;
+import springbook.user.sqlservice.BaseSqlService;
+import springbook.user.sqlservice.OverlaySqlRegistry;
 import springbook.user.sqlservice.OxmSqlService;
 import springbook.user.sqlservice.SqlMapConfig;
 import springbook.user.sqlservice.SqlRegistry;
 import springbook.user.sqlservice.SqlService;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+import springbook.user.sqlservice.compiled.MappedSqlRegistry;
+import springbook.user.sqlservice.journal.JournalingSqlRegistry;
+import springbook.user.sqlservice.journal.SqlUpdateJournal;
+import springbook.user.sqlservice.monitoring.MonitoringSqlRegistry;
+import springbook.user.sqlservice.monitoring.SqlStatistics;
+import springbook.user.sqlservice.updatable.CachingSqlRegistry;
 import springbook.user.sqlservice.updatable.EmbeddedDbSqlRegistry;
+import springbook.user.sqlservice.updatable.VersionedSqlRegistry;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
 
 @Configuration
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 public class SqlServiceContext {
 
     @Autowired
@@ -23,25 +36,87 @@ public class SqlServiceContext {
 
     @Bean
     public SqlService sqlService() {
+        MappedSqlRegistry snapshot = sqlSnapshot();
+        if (snapshot != null) {
+            return snapshotSqlService(snapshot);
+        }
+
         OxmSqlService sqlService = new OxmSqlService();
-        sqlService.setUnmarshaller(unmarshaller());
         sqlService.setSqlRegistry(sqlRegistry());
-        sqlService.setSqlmap(sqlMapConfig.getSqlMapResource());
+        sqlService.setSqlmaps(sqlMapConfig.getSqlMapResources());
+        sqlService.setNamespaceSqlmaps(sqlMapConfig.getNamespaceSqlMapResources());
+        sqlService.setCompiledSqlmap(sqlMapConfig.getCompiledSqlMapResource());
+        sqlService.setSchema(sqlMapConfig.getSqlMapSchemaResource());
+        sqlService.setValidationDataSource(sqlMapConfig.getSqlValidationDataSource());
+        sqlService.setWatchSqlmap(sqlMapConfig.isWatchSqlMap());
+        sqlService.setAsyncLoading(sqlMapConfig.isAsyncSqlLoading());
         return sqlService;
     }
 
+    // 스냅샷 모드에서는 리더를 두지 않는다. sqlmap을 파싱하거나 해시하지 않고, SQL을 레지스트리에 옮겨 담지도 않으므로
+    // 시작 비용이 SQL 개수와 상관없고 SQL은 매핑한 영역에만 있다. 힌트도 스냅샷의 힌트 영역에서 찾는다.
+    private SqlService snapshotSqlService(MappedSqlRegistry snapshot) {
+        if (sqlMapConfig.getSqlValidationDataSource() != null) {
+            throw new IllegalStateException("스냅샷 모드에서는 sqlmap을 읽지 않으므로 SQL을 검증할 수 없습니다.");
+        }
+        BaseSqlService sqlService = new BaseSqlService();
+        sqlService.setSqlRegistry(sqlRegistry());
+        sqlService.setSqlHintsFinder(snapshot);
+        return sqlService;
+    }
+
+    @Bean
+    public MappedSqlRegistry sqlSnapshot() {
+        Path snapshot = sqlMapConfig.getSqlSnapshotPath();
+        return snapshot == null ? null : new MappedSqlRegistry(snapshot);
+    }
+
     @Bean
     public SqlRegistry sqlRegistry() {
-        EmbeddedDbSqlRegistry sqlRegistry = new EmbeddedDbSqlRegistry();
-        sqlRegistry.setDataSource(embeddedDatabase());
-        return sqlRegistry;
+        MappedSqlRegistry snapshot = sqlSnapshot();
+        UpdatableSqlRegistry updatableSqlRegistry;
+        if (snapshot != null) {
+            // 스냅샷은 이미 메모리처럼 읽히므로 캐시를 두지 않는다. 대신 트랜잭션 안에서 SQL 버전을 고정하지도 않는다.
+            updatableSqlRegistry = new OverlaySqlRegistry(snapshot);
+        } else {
+            EmbeddedDbSqlRegistry sqlRegistry = new EmbeddedDbSqlRegistry();
+            sqlRegistry.setDataSource(embeddedDatabase());
+            updatableSqlRegistry = new CachingSqlRegistry(
+                    new MonitoringSqlRegistry(sqlRegistry, embeddedDbSqlStatistics()), new VersionedSqlRegistry());
+        }
+        SqlUpdateJournal journal = sqlUpdateJournal();
+        if (journal != null) {
+            JournalingSqlRegistry journalingSqlRegistry = new JournalingSqlRegistry(updatableSqlRegistry, journal);
+            if (snapshot != null) {
+                journalingSqlRegistry.registerJournaledSql();
+            }
+            updatableSqlRegistry = journalingSqlRegistry;
+        }
+        // 바깥쪽은 핸들을 포함한 모든 조회를, 안쪽은 캐시를 지나 DB까지 간 조회만 기록한다.
+        return new MonitoringSqlRegistry(updatableSqlRegistry, sqlStatistics());
+    }
+
+    @Bean
+    public SqlUpdateJournal sqlUpdateJournal() {
+        Path directory = sqlMapConfig.getSqlUpdateJournalDirectory();
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new SqlUpdateJournal(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException(directory + "에 SQL 수정 저널을 만들 수 없습니다.", e);
+        }
+    }
+
+    @Bean
+    public SqlStatistics sqlStatistics() {
+        return new SqlStatistics();
     }
 
     @Bean
-    public Unmarshaller unmarshaller() {
-        Jaxb2Marshaller unmarshaller = new Jaxb2Marshaller();
-        unmarshaller.setContextPath("springbook.user.sqlservice.jaxb");
-        return unmarshaller;
+    public SqlStatistics embeddedDbSqlStatistics() {
+        return new SqlStatistics();
     }
 
     @Bean
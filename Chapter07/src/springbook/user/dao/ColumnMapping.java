@@ -0,0 +1,99 @@
+package springbook.user.dao;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// 컬럼 이름과 값을 읽어 오브젝트에 넣는 방법을 한 번 정의해 두고 여러 쿼리에서 쓴다.
+// 컬럼 위치는 ResultSet마다 메타데이터로 한 번만 찾고, 각 행은 인덱스로 읽는다.
+// Builder로 만든 뒤에는 바뀌지 않으므로 여러 스레드가 공유해도 된다.
+public class ColumnMapping<T> {
+    @FunctionalInterface
+    public interface ColumnReader<T> {
+        void read(T target, ResultSet resultSet, int columnIndex) throws SQLException;
+    }
+
+    private final Supplier<T> factory;
+    private final String[] columnNames;
+    private final ColumnReader<T>[] readers;
+
+    private ColumnMapping(Supplier<T> factory, String[] columnNames, ColumnReader<T>[] readers) {
+        this.factory = factory;
+        this.columnNames = columnNames;
+        this.readers = readers;
+    }
+
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    public static class Builder<T> {
+        private final Supplier<T> factory;
+        private final List<String> columnNames = new ArrayList<>();
+        private final List<ColumnReader<T>> readers = new ArrayList<>();
+
+        private Builder(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        public Builder<T> column(String columnName, ColumnReader<T> reader) {
+            this.columnNames.add(columnName);
+            this.readers.add(reader);
+            return this;
+        }
+
+        // 지금까지 추가한 컬럼을 복사하므로 이후에 Builder를 고쳐도 만들어진 ColumnMapping은 바뀌지 않는다.
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public ColumnMapping<T> build() {
+            return new ColumnMapping<>(this.factory, this.columnNames.toArray(new String[0]),
+                    this.readers.toArray(new ColumnReader[0]));
+        }
+    }
+
+    // 돌려주는 RowMapper는 처음 받은 ResultSet의 컬럼 위치를 기억하므로 쿼리마다 새로 만들어 써야 한다.
+    public RowMapper<T> rowMapper() {
+        return new IndexedRowMapper();
+    }
+
+    // JDBC의 findColumn()처럼 컬럼 레이블을 대소문자 구분 없이 찾고, 같은 이름이 여럿이면 앞의 것을 쓴다.
+    private int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        int[] indexes = new int[this.columnNames.length];
+        for (int i = 0; i < indexes.length; i++) {
+            String columnName = this.columnNames[i];
+            for (int column = 1; column <= columnCount && indexes[i] == 0; column++) {
+                if (columnName.equalsIgnoreCase(metaData.getColumnLabel(column))) {
+                    indexes[i] = column;
+                }
+            }
+            if (indexes[i] == 0) {
+                throw new SQLException(columnName + " 컬럼이 결과에 없습니다.");
+            }
+        }
+        return indexes;
+    }
+
+    private class IndexedRowMapper implements RowMapper<T> {
+        private ResultSet resultSet;
+        private int[] indexes;
+
+        @Override
+        public T mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+            if (resultSet != this.resultSet) {
+                this.indexes = resolve(resultSet.getMetaData());
+                this.resultSet = resultSet;
+            }
+
+            T target = factory.get();
+            for (int i = 0; i < this.indexes.length; i++) {
+                readers[i].read(target, resultSet, this.indexes[i]);
+            }
+            return target;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package springbook.user.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+import springbook.user.domain.Level;
+import springbook.user.domain.User;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class ColumnMappingTest {
+    ResultSet resultSet;
+    ResultSetMetaData metaData;
+
+    @Before
+    public void setUp() throws SQLException {
+        resultSet = mock(ResultSet.class);
+        metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+
+        String[] labels = { "EMAIL", "ID", "NAME", "PASSWORD", "LEVEL", "LOGIN", "RECOMMEND" };
+        when(metaData.getColumnCount()).thenReturn(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+        }
+    }
+
+    @Test
+    public void mapByResolvedIndexes() throws SQLException {
+        when(resultSet.getString(1)).thenReturn("foo1@ksug.org", "foo2@ksug.org");
+        when(resultSet.getString(2)).thenReturn("foo1", "foo2");
+        when(resultSet.getString(3)).thenReturn("bar1", "bar2");
+        when(resultSet.getString(4)).thenReturn("p1", "p2");
+        when(resultSet.getInt(5)).thenReturn(1, 3);
+        when(resultSet.getInt(6)).thenReturn(10, 20);
+        when(resultSet.getInt(7)).thenReturn(0, 40);
+
+        RowMapper<User> rowMapper = UserDaoJdbc.userRowMapper();
+        User user1 = rowMapper.mapRow(resultSet, 0);
+        User user2 = rowMapper.mapRow(resultSet, 1);
+
+        assertThat(user1.getId(), is("foo1"));
+        assertThat(user1.getEmail(), is("foo1@ksug.org"));
+        assertThat(user1.getLevel(), is(Level.BASIC));
+        assertThat(user2.getName(), is("bar2"));
+        assertThat(user2.getLevel(), is(Level.GOLD));
+        assertThat(user2.getRecommend(), is(40));
+
+        verify(resultSet, times(1)).getMetaData();
+        verify(resultSet, never()).getString(anyString());
+    }
+
+    @Test(expected = SQLException.class)
+    public void missingColumn() throws SQLException {
+        ColumnMapping.builder(User::new)
+                .column("nickname", (user, rs, i) -> user.setName(rs.getString(i)))
+                .build()
+                .rowMapper()
+                .mapRow(resultSet, 0);
+    }
+
+    @Test
+    public void builtMappingIsNotAffectedByBuilder() throws SQLException {
+        when(resultSet.getString(2)).thenReturn("foo1");
+
+        ColumnMapping.Builder<User> builder = ColumnMapping.<User>builder(User::new)
+                .column("id", (user, rs, i) -> user.setId(rs.getString(i)));
+        ColumnMapping<User> mapping = builder.build();
+        builder.column("nickname", (user, rs, i) -> user.setName(rs.getString(i)));
+
+        assertThat(mapping.rowMapper().mapRow(resultSet, 0).getId(), is("foo1"));
+    }
+}
@@ -2,18 +2,30 @@ package springbook.user.dao;
 
 import springbook.user.domain.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserDao {
     void add(User user);
 
+    void addAll(Collection<User> users);
+
     User get(String id);
 
     List<User> getAll();
 
+    // afterId 다음부터 id 순으로 최대 limit명. afterId가 null이면 첫 페이지를 가져온다.
+    List<User> getPage(String afterId, int limit);
+
+    // 모든 사용자를 id 순으로 한 명씩 넘긴다. 목록을 만들지 않으므로 사용자 수와 관계없이 메모리를 일정하게 쓴다.
+    void forEach(Consumer<? super User> action);
+
     void deleteAll();
 
     int getCount();
 
     void update(User user1);
+
+    void updateAll(Collection<User> users);
 }
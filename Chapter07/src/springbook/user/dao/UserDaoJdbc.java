@@ -1,77 +1,240 @@
 package springbook.user.dao;
 
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 import springbook.user.domain.Level;
 import springbook.user.domain.User;
+import springbook.user.sqlservice.BoundSql;
+import springbook.user.sqlservice.NamedSql;
+import springbook.user.sqlservice.NamedSqlHandle;
+import springbook.user.sqlservice.SqlHints;
 import springbook.user.sqlservice.SqlService;
 
 import javax.sql.DataSource;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Repository
-public class UserDaoJdbc implements UserDao {
+public class UserDaoJdbc implements UserDao, InitializingBean {
     private JdbcTemplate jdbcTemplate;
+    private int batchSize = 1000;
 
     @Autowired
     private SqlService sqlService;
 
+    private Statement userAddSql;
+    private Statement userGetSql;
+    private Statement userDeleteAllSql;
+    private Statement userGetCountSql;
+    private Statement userGetAllSql;
+    private Statement userScanSql;
+    private Statement userGetFirstPageSql;
+    private Statement userGetPageAfterSql;
+    private Statement userUpdateSql;
+
     @Autowired
     public void setDataSource(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
     }
 
-    private RowMapper<User> userMapper = (resultSet, rowNum) -> {
-        User user = new User();
-        user.setId(resultSet.getString("id"));
-        user.setName(resultSet.getString("name"));
-        user.setPassword(resultSet.getString("password"));
-        user.setLevel(Level.valueOf(resultSet.getInt("level")));
-        user.setLogin(resultSet.getInt("login"));
-        user.setRecommend(resultSet.getInt("recommend"));
-        user.setEmail(resultSet.getString("email"));
-        return user;
-    };
+    // addAll(), updateAll()이 한 번에 DB로 보내는 행 수
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.userAddSql = statement("userAdd");
+        this.userGetSql = statement("userGet");
+        this.userDeleteAllSql = statement("userDeleteAll");
+        this.userGetCountSql = statement("userGetCount");
+        this.userGetAllSql = statement("userGetAll");
+        this.userScanSql = statement("userScan");
+        this.userGetFirstPageSql = statement("userGetFirstPage");
+        this.userGetPageAfterSql = statement("userGetPageAfter");
+        this.userUpdateSql = statement("userUpdate");
+    }
+
+    private Statement statement(String key) {
+        return new Statement(key, this.sqlService.getNamedSqlHandle(key));
+    }
+
+    // sqlmap에 지정한 실행 힌트는 SQL을 처음 실행할 때 읽어 SQL별 JdbcTemplate에 적용하고, SQL이 바뀌면 다시 읽는다.
+    // sqlmap을 백그라운드에서 읽는 동안에도 DAO 초기화는 기다리지 않는다.
+    private class Statement {
+        final String key;
+        final NamedSqlHandle sql;
+        private volatile Hinted hinted;
+
+        Statement(String key, NamedSqlHandle sql) {
+            this.key = key;
+            this.sql = sql;
+        }
+
+        private Hinted hinted() {
+            String sql = this.sql.getSql();
+            Hinted hinted = this.hinted;
+            if (hinted == null || !hinted.sql.equals(sql)) {
+                SqlHints hints = sqlService.getSqlHints(key);
+                hinted = new Hinted(sql, hints, hints.applyTo(UserDaoJdbc.this.jdbcTemplate));
+                this.hinted = hinted;
+            }
+            return hinted;
+        }
+
+        JdbcTemplate template() {
+            return hinted().jdbcTemplate;
+        }
+
+        String getSql() {
+            return sql.getSql();
+        }
+
+        int update(SqlParameterSource paramSource) {
+            BoundSql boundSql = sql.bind(paramSource);
+            return template().update(boundSql.getSql(), boundSql.getArgs());
+        }
+
+        // streaming 힌트가 붙은 SQL은 결과를 모두 메모리에 모을 수 없으므로 forEach()로만 실행한다.
+        <T> List<T> query(SqlParameterSource paramSource, RowMapper<T> rowMapper) {
+            Hinted hinted = hinted();
+            if (hinted.hints.isStreaming()) {
+                throw new InvalidDataAccessApiUsageException(key + "는 한 행씩 처리해야 하는 SQL이므로 리스트로 가져올 수 없습니다.");
+            }
+            BoundSql boundSql = sql.bind(paramSource);
+            return hinted.jdbcTemplate.query(boundSql.getSql(), boundSql.getArgs(), rowMapper);
+        }
+
+        <T> void forEach(SqlParameterSource paramSource, RowMapper<T> rowMapper, Consumer<? super T> action) {
+            BoundSql boundSql = sql.bind(paramSource);
+            template().query(boundSql.getSql(), boundSql.getArgs(),
+                    (RowCallbackHandler)resultSet -> action.accept(rowMapper.mapRow(resultSet, resultSet.getRow())));
+        }
+
+        // 모든 항목이 같은 모양의 SQL로 바인딩된다고 가정하므로 컬렉션 파라미터는 쓸 수 없다.
+        <T> void batchUpdate(Collection<T> items, int batchSize, Function<T, SqlParameterSource> parameters) {
+            NamedSql namedSql = sql.getNamedSql();
+            template().batchUpdate(namedSql.getPlaceholderSql(), items, batchSize, (ps, item) ->
+                    new ArgumentPreparedStatementSetter(namedSql.bind(parameters.apply(item)).getArgs()).setValues(ps));
+        }
+    }
+
+    private static class Hinted {
+        final String sql;
+        final SqlHints hints;
+        final JdbcTemplate jdbcTemplate;
+
+        Hinted(String sql, SqlHints hints, JdbcTemplate jdbcTemplate) {
+            this.sql = sql;
+            this.hints = hints;
+            this.jdbcTemplate = jdbcTemplate;
+        }
+    }
+
+    private static final ColumnMapping<User> USER_MAPPING = ColumnMapping.builder(User::new)
+            .column("id", (user, resultSet, i) -> user.setId(resultSet.getString(i)))
+            .column("name", (user, resultSet, i) -> user.setName(resultSet.getString(i)))
+            .column("password", (user, resultSet, i) -> user.setPassword(resultSet.getString(i)))
+            .column("level", (user, resultSet, i) -> user.setLevel(Level.valueOf(resultSet.getInt(i))))
+            .column("login", (user, resultSet, i) -> user.setLogin(resultSet.getInt(i)))
+            .column("recommend", (user, resultSet, i) -> user.setRecommend(resultSet.getInt(i)))
+            .column("email", (user, resultSet, i) -> user.setEmail(resultSet.getString(i)))
+            .build();
+
+    // 돌려주는 RowMapper는 첫 ResultSet의 컬럼 위치를 기억하므로 쿼리마다 새로 받아야 한다.
+    public static RowMapper<User> userRowMapper() {
+        return USER_MAPPING.rowMapper();
+    }
 
     @Override
     public void add(final User user) {
-        this.jdbcTemplate.update(
-            this.sqlService.getSql("userAdd"),
-            user.getId(), user.getName(), user.getPassword(),
-            user.getLevel().intValue(), user.getLogin(), user.getRecommend(), user.getEmail());
+        this.userAddSql.update(userParameters(user));
+    }
+
+    @Override
+    public void addAll(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        this.userAddSql.batchUpdate(users, this.batchSize, this::userParameters);
     }
 
     @Override
     public User get(String id) {
-        return this.jdbcTemplate.queryForObject(
-                this.sqlService.getSql("userGet"),
-            new Object[] { id }, userMapper);
+        return this.userGetSql.template().queryForObject(
+                this.userGetSql.getSql(),
+            new Object[] { id }, USER_MAPPING.rowMapper());
     }
 
     @Override
     public void deleteAll() {
-        this.jdbcTemplate.update(this.sqlService.getSql("userDeleteAll"));
+        this.userDeleteAllSql.template().update(this.userDeleteAllSql.getSql());
     }
 
     @Override
     public int getCount() {
-        return this.jdbcTemplate.queryForObject(
-                this.sqlService.getSql("userGetCount"), Integer.class);
+        return this.userGetCountSql.template().queryForObject(
+                this.userGetCountSql.getSql(), Integer.class);
     }
 
     @Override
     public List<User> getAll() {
-        return this.jdbcTemplate.query(
-                this.sqlService.getSql("userGetAll"), userMapper);
+        return this.userGetAllSql.query(EmptySqlParameterSource.INSTANCE, USER_MAPPING.rowMapper());
+    }
+
+    // OFFSET 대신 마지막으로 본 id 다음부터 인덱스를 타고 읽으므로 뒤쪽 페이지도 첫 페이지와 비용이 같다.
+    @Override
+    public List<User> getPage(String afterId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit은 0보다 커야 합니다: " + limit);
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        if (afterId == null) {
+            return this.userGetFirstPageSql.query(params, USER_MAPPING.rowMapper());
+        }
+        return this.userGetPageAfterSql.query(params.addValue("afterId", afterId), USER_MAPPING.rowMapper());
+    }
+
+    // userScan의 fetchSize만큼씩 가져오므로 MySQL에서는 useCursorFetch=true로 서버 커서를 쓴다.
+    // 서버 커서를 쓰면 콜백 안에서 같은 커넥션으로 다른 SQL을 실행할 수 있다.
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        this.userScanSql.forEach(EmptySqlParameterSource.INSTANCE, USER_MAPPING.rowMapper(), action);
     }
 
     @Override
     public void update(User user) {
-        this.jdbcTemplate.update(
-                this.sqlService.getSql("userUpdate"),
-            user.getName(), user.getPassword(), user.getLevel().intValue(),
-            user.getLogin(), user.getRecommend(), user.getEmail(), user.getId());
+        this.userUpdateSql.update(userParameters(user));
+    }
+
+    @Override
+    public void updateAll(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        this.userUpdateSql.batchUpdate(users, this.batchSize, this::userParameters);
+    }
+
+    private SqlParameterSource userParameters(User user) {
+        return new MapSqlParameterSource()
+                .addValue("id", user.getId())
+                .addValue("name", user.getName())
+                .addValue("password", user.getPassword())
+                .addValue("level", user.getLevel().intValue())
+                .addValue("login", user.getLogin())
+                .addValue("recommend", user.getRecommend())
+                .addValue("email", user.getEmail());
     }
 }
@@ -18,6 +18,9 @@ import springbook.user.domain.User;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -76,6 +79,41 @@ public class UserDaoTest {
         assertThat(dao.getCount(), is(3));
     }
 
+    @Test
+    public void addAll() {
+        dao.deleteAll();
+
+        dao.addAll(Arrays.asList(user1, user2, user3));
+        assertThat(dao.getCount(), is(3));
+        checkSameUser(dao.get(user1.getId()), user1);
+        checkSameUser(dao.get(user3.getId()), user3);
+
+        dao.addAll(Collections.emptyList());
+        assertThat(dao.getCount(), is(3));
+    }
+
+    @Test
+    public void addAllInSeveralBatches() {
+        dao.deleteAll();
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            users.add(new User("bulk" + i, "name" + i, "pw", Level.BASIC, i, 0, "bulk" + i + "@ksug.org"));
+        }
+        dao.addAll(users);
+
+        assertThat(dao.getCount(), is(2500));
+        checkSameUser(dao.get("bulk2499"), users.get(2499));
+    }
+
+    // 배치 실패를 어떤 예외로 번역하는지는 드라이버마다 다르다.
+    @Test(expected = DataAccessException.class)
+    public void addAllDuplicateKey() {
+        dao.deleteAll();
+
+        dao.addAll(Arrays.asList(user1, user2, user1));
+    }
+
     @Test(expected = EmptyResultDataAccessException.class)
     public void getUserFailure() throws SQLException {
         dao.deleteAll();
@@ -110,6 +148,46 @@ public class UserDaoTest {
         checkSameUser(user3, users3.get(2));
     }
 
+    @Test
+    public void forEach() {
+        dao.deleteAll();
+
+        List<User> scanned = new ArrayList<>();
+        dao.forEach(scanned::add);
+        assertThat(scanned.size(), is(0));
+
+        dao.addAll(Arrays.asList(user3, user1, user2));
+        dao.forEach(scanned::add);
+        assertThat(scanned.size(), is(3));
+        checkSameUser(user1, scanned.get(0));
+        checkSameUser(user2, scanned.get(1));
+        checkSameUser(user3, scanned.get(2));
+    }
+
+    @Test
+    public void getPage() {
+        dao.deleteAll();
+        assertThat(dao.getPage(null, 2).size(), is(0));
+
+        dao.addAll(Arrays.asList(user3, user1, user2));
+
+        List<User> page1 = dao.getPage(null, 2);
+        assertThat(page1.size(), is(2));
+        checkSameUser(user1, page1.get(0));
+        checkSameUser(user2, page1.get(1));
+
+        List<User> page2 = dao.getPage(page1.get(1).getId(), 2);
+        assertThat(page2.size(), is(1));
+        checkSameUser(user3, page2.get(0));
+
+        assertThat(dao.getPage(user3.getId(), 2).size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPageWithInvalidLimit() {
+        dao.getPage(null, 0);
+    }
+
     private void checkSameUser(User user1, User user2) {
         assertThat(user1.getId(), is(user2.getId()));
         assertThat(user1.getName(), is(user2.getName()));
@@ -163,5 +241,20 @@ public class UserDaoTest {
         User user2same = dao.get(user2.getId());
         checkSameUser(user2, user2same);
     }
-}
 
+    @Test
+    public void updateAll() {
+        dao.deleteAll();
+
+        dao.addAll(Arrays.asList(user1, user2, user3));
+
+        user1.setLevel(Level.SILVER);
+        user2.setLevel(Level.GOLD);
+        user2.setRecommend(99);
+        dao.updateAll(Arrays.asList(user1, user2));
+
+        checkSameUser(dao.get(user1.getId()), user1);
+        checkSameUser(dao.get(user2.getId()), user2);
+        checkSameUser(dao.get(user3.getId()), user3);
+    }
+}
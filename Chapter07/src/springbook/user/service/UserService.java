@@ -3,11 +3,13 @@ package springbook.user.service;
 import org.springframework.transaction.annotation.Transactional;
 import springbook.user.domain.User;
 
+import java.util.Collection;
 import java.util.List;
 
 @Transactional
 public interface UserService {
     void add(User user);
+    void addAll(Collection<User> users);
     void deleteAll();
     void update(User user);
     void upgradeLevels();
@@ -17,4 +19,7 @@ public interface UserService {
 
     @Transactional(readOnly = true)
     List<User> getAll();
+
+    @Transactional(readOnly = true)
+    List<User> getPage(String afterId, int limit);
 }
@@ -9,6 +9,8 @@ import springbook.user.dao.UserDao;
 import springbook.user.domain.Level;
 import springbook.user.domain.User;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Service("userService")
@@ -22,6 +24,8 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private MailSender mailSender;
 
+    private int upgradeBatchSize = 1000;
+
     public void setUserDao(UserDao userDao) {
         this.userDao = userDao;
     }
@@ -30,19 +34,40 @@ public class UserServiceImpl implements UserService {
         this.mailSender = mailSender;
     }
 
+    // 등급이 바뀐 사용자를 이만큼 모아서 한 번에 DB에 반영한다.
+    public void setUpgradeBatchSize(int upgradeBatchSize) {
+        this.upgradeBatchSize = upgradeBatchSize;
+    }
+
+    // 사용자 목록을 만들지 않고 한 명씩 읽으면서 처리한다.
     public void upgradeLevels() {
-        List<User> users = userDao.getAll();
-        for (User user : users) {
+        List<User> upgraded = new ArrayList<>();
+        userDao.forEach(user -> {
             if (canUpgradeLevel(user)) {
                 upgradeLevel(user);
+                upgraded.add(user);
+                if (upgraded.size() >= upgradeBatchSize) {
+                    flushUpgrades(upgraded);
+                }
             }
-        }
+        });
+        flushUpgrades(upgraded);
     }
 
     protected void upgradeLevel(User user) {
         user.upgradeLevel();
-        userDao.update(user);
-        sendUpgradeEMail(user);
+    }
+
+    // 메일은 DB 반영이 끝난 사용자에게만 보낸다. 모은 목록은 비워서 다시 쓴다.
+    private void flushUpgrades(List<User> upgraded) {
+        if (upgraded.isEmpty()) {
+            return;
+        }
+        userDao.updateAll(new ArrayList<>(upgraded));
+        for (User user : upgraded) {
+            sendUpgradeEMail(user);
+        }
+        upgraded.clear();
     }
 
     private void sendUpgradeEMail(User user) {
@@ -76,6 +101,17 @@ public class UserServiceImpl implements UserService {
         userDao.add(user);
     }
 
+    // 한 트랜잭션 안에서 배치로 넣으므로 커넥션 하나로 모든 사용자를 등록한다.
+    @Override
+    public void addAll(Collection<User> users) {
+        for (User user : users) {
+            if (user.getLevel() == null) {
+                user.setLevel(Level.BASIC);
+            }
+        }
+        userDao.addAll(users);
+    }
+
     @Override
     public User get(String id) {
         return userDao.get(id);
@@ -86,6 +122,11 @@ public class UserServiceImpl implements UserService {
         return userDao.getAll();
     }
 
+    @Override
+    public List<User> getPage(String afterId, int limit) {
+        return userDao.getPage(afterId, limit);
+    }
+
     @Override
     public void deleteAll() {
         userDao.deleteAll();
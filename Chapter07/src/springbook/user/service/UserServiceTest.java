@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.dao.TransientDataAccessResourceException;
@@ -20,6 +22,7 @@ import springbook.user.domain.User;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
@@ -47,8 +50,12 @@ public class UserServiceTest {
     @Autowired
     DefaultListableBeanFactory bf;
 
+    @Captor
+    ArgumentCaptor<List<User>> updatedArg;
+
     @Before
     public void setUp() {
+        MockitoAnnotations.initMocks(this);
         users = Arrays.asList(
             new User("foo1", "bar1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER - 1, 0, "foo1@ksug.org"),
             new User("foo2", "bar2", "p2", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "foo2@ksug.org"),
@@ -62,8 +69,7 @@ public class UserServiceTest {
     public void upgradeLevels() throws Exception {
         UserServiceImpl userServiceImpl = new UserServiceImpl();
 
-        UserDao mockUserDao = mock(UserDao.class);
-        when(mockUserDao.getAll()).thenReturn(this.users);
+        UserDao mockUserDao = mockUserDao();
         userServiceImpl.setUserDao(mockUserDao);
 
         MailSender mockMailSender = mock(MailSender.class);
@@ -71,16 +77,11 @@ public class UserServiceTest {
 
         userServiceImpl.upgradeLevels();
 
-        // mockUserDao::update()가 2번 불렸는지 검증한다.
-        verify(mockUserDao, times(2)).update(any(User.class));
-        verify(mockUserDao, times(2)).update(any(User.class));
-
-        // mockUserDao::update()가 users의 1번째 오브젝트를 파라미터로 받았는지 검증한다.
-        verify(mockUserDao).update(users.get(1));
+        // 업그레이드 대상인 users의 1번째, 3번째 오브젝트가 한 번의 updateAll()로 반영됐는지 검증한다.
+        verify(mockUserDao).updateAll(updatedArg.capture());
+        verify(mockUserDao, never()).update(any(User.class));
+        assertThat(updatedArg.getValue(), is(Arrays.asList(users.get(1), users.get(3))));
         assertThat(users.get(1).getLevel(), is(Level.SILVER));
-
-        // mockUserDao::update()가 users의 3번째 오브젝트를 파라미터로 받았는지 검증한다.
-        verify(mockUserDao).update(users.get(3));
         assertThat(users.get(3).getLevel(), is(Level.GOLD));
 
         ArgumentCaptor<SimpleMailMessage> mailMessageArg = ArgumentCaptor.forClass(SimpleMailMessage.class);
@@ -90,6 +91,44 @@ public class UserServiceTest {
         assertThat(mailMessages.get(1).getTo()[0], is(users.get(3).getEmail()));
     }
 
+    @Test
+    public void upgradeLevelsInBatches() {
+        UserServiceImpl userServiceImpl = new UserServiceImpl();
+        UserDao mockUserDao = mockUserDao();
+        userServiceImpl.setUserDao(mockUserDao);
+        userServiceImpl.setMailSender(mock(MailSender.class));
+        userServiceImpl.setUpgradeBatchSize(1);
+
+        userServiceImpl.upgradeLevels();
+
+        verify(mockUserDao).updateAll(Arrays.asList(users.get(1)));
+        verify(mockUserDao).updateAll(Arrays.asList(users.get(3)));
+    }
+
+    @Test
+    public void upgradeLevelsWithDatabase() {
+        userDao.deleteAll();
+        userDao.addAll(users);
+
+        userService.upgradeLevels();
+
+        checkLevelUpgraded(users.get(0), false);
+        checkLevelUpgraded(users.get(1), true);
+        checkLevelUpgraded(users.get(2), false);
+        checkLevelUpgraded(users.get(3), true);
+        checkLevelUpgraded(users.get(4), false);
+    }
+
+    private UserDao mockUserDao() {
+        UserDao mockUserDao = mock(UserDao.class);
+        doAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(0);
+            this.users.forEach(action);
+            return null;
+        }).when(mockUserDao).forEach(any());
+        return mockUserDao;
+    }
+
     private void checkLevelUpgraded(User user, boolean upgraded) {
         User userUpdate = userDao.get(user.getId());
         if (upgraded) {
@@ -118,6 +157,19 @@ public class UserServiceTest {
         assertThat(userWithoutLevelRead.getLevel(), is(Level.BASIC));
     }
 
+    @Test
+    public void addAll() {
+        userDao.deleteAll();
+
+        users.get(0).setLevel(null);
+        userService.addAll(users);
+
+        assertThat(userDao.getCount(), is(users.size()));
+        assertThat(userDao.get(users.get(0).getId()).getLevel(), is(Level.BASIC));
+        assertThat(userDao.get(users.get(4).getId()).getLevel(), is(Level.GOLD));
+    }
+
+    // testUserService는 한 명씩 DB에 반영하므로 foo4에서 실패하기 전에 foo2는 이미 반영된 상태다.
     @Test
     public void upgradeAllOrNothing() throws Exception {
         userDao.deleteAll();
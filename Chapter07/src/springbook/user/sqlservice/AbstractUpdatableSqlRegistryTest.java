@@ -3,11 +3,15 @@ package springbook.user.sqlservice;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
 public abstract class AbstractUpdatableSqlRegistryTest {
     UpdatableSqlRegistry sqlRegistry;
@@ -55,6 +59,51 @@ public abstract class AbstractUpdatableSqlRegistryTest {
         checkFindResult("Modified1", "SQL2", "Modified3");
     }
 
+    @Test
+    public void registerMany() throws SqlNotFoundException {
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        for (int i = 4; i < 1004; i++) {
+            sqlmap.put("KEY" + i, "SQL" + i);
+        }
+        sqlRegistry.registerSql(sqlmap);
+
+        checkFindResult("SQL1", "SQL2", "SQL3");
+        assertThat(sqlRegistry.findSql("KEY4"), is("SQL4"));
+        assertThat(sqlRegistry.findSql("KEY1003"), is("SQL1003"));
+    }
+
+    @Test
+    public void mergeSql() throws SqlNotFoundException {
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        sqlmap.put("KEY2", "Modified2");
+        sqlmap.put("KEY4", "SQL4");
+        sqlRegistry.mergeSql(sqlmap);
+
+        checkFindResult("SQL1", "Modified2", "SQL3");
+        assertThat(sqlRegistry.findSql("KEY4"), is("SQL4"));
+    }
+
+    @Test
+    public void mergeSqlWithRemoval() throws SqlNotFoundException {
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        sqlmap.put("KEY2", "Modified2");
+        sqlmap.put("KEY4", "SQL4");
+        sqlRegistry.mergeSql(sqlmap, new HashSet<>(Arrays.asList("KEY3", "SQL999!@#$")));
+
+        assertThat(sqlRegistry.findSql("KEY1"), is("SQL1"));
+        assertThat(sqlRegistry.findSql("KEY2"), is("Modified2"));
+        assertThat(sqlRegistry.findSql("KEY4"), is("SQL4"));
+        try {
+            sqlRegistry.findSql("KEY3");
+            fail();
+        } catch (SqlNotFoundException expected) {
+        }
+
+        // sqlmap에 다시 추가되면 다시 등록된다.
+        sqlRegistry.registerSql("KEY3", "Readded3");
+        assertThat(sqlRegistry.findSql("KEY3"), is("Readded3"));
+    }
+
     @Test(expected = SqlUpdateFailureException.class)
     public void updateWithNotExistingKey() throws SqlUpdateFailureException {
         sqlRegistry.updateSql("SQL9999!@#$", "Modified2");
@@ -2,9 +2,20 @@ package springbook.user.sqlservice;
 
 import org.springframework.beans.factory.InitializingBean;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 public class BaseSqlService implements SqlService, InitializingBean {
     private SqlReader sqlReader;
     private SqlRegistry sqlRegistry;
+    private SqlHintsFinder sqlHintsFinder;
+    private Map<String, SqlReader> namespaceSqlReaders;
+    private final Map<String, FutureTask<Void>> loadedNamespaces = new ConcurrentHashMap<>();
+    private final ThreadLocal<Set<String>> loadingNamespaces = ThreadLocal.withInitial(HashSet::new);
 
     public void setSqlReader(SqlReader sqlReader) {
         this.sqlReader = sqlReader;
@@ -14,21 +25,127 @@ public class BaseSqlService implements SqlService, InitializingBean {
         this.sqlRegistry = sqlRegistry;
     }
 
+    // 리더 없이 미리 채워진 레지스트리를 쓸 때 힌트는 이 쪽에서 찾는다.
+    public void setSqlHintsFinder(SqlHintsFinder sqlHintsFinder) {
+        this.sqlHintsFinder = sqlHintsFinder;
+    }
+
+    // 키 접두어(네임스페이스)별 리더를 지정하면 해당 네임스페이스의 SQL을 처음 찾을 때 읽어온다.
+    public void setNamespaceSqlReaders(Map<String, SqlReader> namespaceSqlReaders) {
+        this.namespaceSqlReaders = namespaceSqlReaders;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         loadSql();
     }
 
     public void loadSql() {
-        this.sqlReader.read(this.sqlRegistry);
+        // 미리 채워진 레지스트리(예: 매핑된 스냅샷)를 쓸 때는 리더를 지정하지 않는다.
+        if (this.sqlReader != null) {
+            this.sqlReader.read(this.sqlRegistry);
+        }
     }
 
     @Override
     public String getSql(String key) throws SqlRetrievalFailureException {
         try {
             return this.sqlRegistry.findSql(key);
+        } catch (SqlNotFoundException e) {
+            if (!loadNamespace(key)) {
+                throw new SqlRetrievalFailureException(e);
+            }
+        }
+
+        try {
+            return this.sqlRegistry.findSql(key);
+        } catch (SqlNotFoundException e) {
+            throw new SqlRetrievalFailureException(e);
+        }
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlRetrievalFailureException {
+        if (!(this.sqlRegistry instanceof IndexedSqlRegistry)) {
+            return SqlService.super.getSqlHandle(key);
+        }
+
+        IndexedSqlRegistry indexedSqlRegistry = (IndexedSqlRegistry)this.sqlRegistry;
+        try {
+            return indexedSqlRegistry.getSqlHandle(key);
+        } catch (SqlNotFoundException e) {
+            if (!loadNamespace(key)) {
+                throw new SqlRetrievalFailureException(e);
+            }
+        }
+
+        try {
+            return indexedSqlRegistry.getSqlHandle(key);
         } catch (SqlNotFoundException e) {
             throw new SqlRetrievalFailureException(e);
         }
     }
+
+    @Override
+    public SqlHints getSqlHints(String key) {
+        return this.sqlHintsFinder == null ? SqlHints.NONE : this.sqlHintsFinder.findSqlHints(key);
+    }
+
+    private boolean loadNamespace(String key) {
+        String namespace = namespaceOf(key);
+        if (namespace == null) {
+            return false;
+        }
+
+        // 이 스레드가 읽고 있는 네임스페이스를 다시 읽으려 하면 자기 자신을 기다리게 되므로 바로 실패한다.
+        Set<String> loadingNamespaces = this.loadingNamespaces.get();
+        if (loadingNamespaces.contains(namespace)) {
+            throw new SqlRetrievalFailureException(namespace + " 네임스페이스를 읽는 중에 다시 " + namespace
+                    + " 네임스페이스를 읽으려고 했습니다(" + key + "). 네임스페이스 사이에 순환 참조가 있습니다.");
+        }
+
+        // 같은 네임스페이스를 동시에 찾는 스레드는 처음 스레드가 다 읽을 때까지 기다린다.
+        // 읽기는 맵 밖에서 하므로 맵의 잠금을 잡은 채 I/O를 하지 않고, 리더가 다른 네임스페이스를 찾아도 된다.
+        FutureTask<Void> loading = new FutureTask<>(
+                () -> this.namespaceSqlReaders.get(namespace).read(this.sqlRegistry), null);
+        FutureTask<Void> existing = this.loadedNamespaces.putIfAbsent(namespace, loading);
+        if (existing == null) {
+            loadingNamespaces.add(namespace);
+            try {
+                loading.run();
+            } finally {
+                loadingNamespaces.remove(namespace);
+            }
+            existing = loading;
+        }
+
+        try {
+            existing.get();
+        } catch (ExecutionException e) {
+            // 읽다가 실패하면 기록을 지워서 다음 조회 때 다시 시도한다.
+            this.loadedNamespaces.remove(namespace, existing);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new SqlRetrievalFailureException(namespace + " 네임스페이스의 SQL을 읽지 못했습니다", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlRetrievalFailureException(namespace + " 네임스페이스의 SQL을 기다리다 중단되었습니다", e);
+        }
+        return true;
+    }
+
+    private String namespaceOf(String key) {
+        if (this.namespaceSqlReaders == null) {
+            return null;
+        }
+
+        String namespace = null;
+        for (String candidate : this.namespaceSqlReaders.keySet()) {
+            if (key.startsWith(candidate) && (namespace == null || candidate.length() > namespace.length())) {
+                namespace = candidate;
+            }
+        }
+        return namespace;
+    }
 }
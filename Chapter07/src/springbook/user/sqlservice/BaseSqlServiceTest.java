@@ -0,0 +1,137 @@
+package springbook.user.sqlservice;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BaseSqlServiceTest {
+    BaseSqlService sqlService;
+    AtomicInteger userReadCount;
+    AtomicInteger groupReadCount;
+
+    @Before
+    public void setUp() throws Exception {
+        userReadCount = new AtomicInteger();
+        groupReadCount = new AtomicInteger();
+
+        Map<String, SqlReader> readers = new HashMap<>();
+        readers.put("user", sqlRegistry -> {
+            userReadCount.incrementAndGet();
+            sqlRegistry.registerSql("userGet", "SQL1");
+            sqlRegistry.registerSql("userAdd", "SQL2");
+        });
+        readers.put("group", sqlRegistry -> {
+            groupReadCount.incrementAndGet();
+            sqlRegistry.registerSql("groupGet", "SQL3");
+        });
+
+        sqlService = new BaseSqlService();
+        sqlService.setSqlRegistry(new CopyOnWriteSqlRegistry());
+        sqlService.setNamespaceSqlReaders(readers);
+        sqlService.afterPropertiesSet();
+    }
+
+    @Test
+    public void loadNamespaceOnFirstMiss() {
+        assertThat(userReadCount.get(), is(0));
+        assertThat(groupReadCount.get(), is(0));
+
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+        assertThat(sqlService.getSqlHandle("userAdd").getSql(), is("SQL2"));
+        assertThat(userReadCount.get(), is(1));
+        assertThat(groupReadCount.get(), is(0));
+
+        assertThat(sqlService.getSql("groupGet"), is("SQL3"));
+        assertThat(groupReadCount.get(), is(1));
+    }
+
+    @Test(expected = SqlRetrievalFailureException.class)
+    public void unknownKeyInNamespace() {
+        sqlService.getSql("userDelete");
+    }
+
+    @Test(expected = SqlRetrievalFailureException.class)
+    public void unknownNamespace() {
+        sqlService.getSql("orderGet");
+    }
+
+    @Test
+    public void loadNamespaceOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                tasks.add(() -> sqlService.getSql("userGet"));
+            }
+            for (Future<String> result : executor.invokeAll(tasks)) {
+                assertThat(result.get(), is("SQL1"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(userReadCount.get(), is(1));
+    }
+
+    @Test
+    public void retryFailedNamespace() {
+        AtomicInteger attempts = new AtomicInteger();
+        Map<String, SqlReader> readers = new HashMap<>();
+        readers.put("order", sqlRegistry -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("읽기 실패");
+            }
+            sqlRegistry.registerSql("orderGet", "SQL4");
+        });
+        sqlService.setNamespaceSqlReaders(readers);
+
+        try {
+            sqlService.getSql("orderGet");
+            fail();
+        } catch (IllegalStateException e) {}
+
+        assertThat(sqlService.getSql("orderGet"), is("SQL4"));
+        assertThat(attempts.get(), is(2));
+    }
+
+    @Test
+    public void readerMayLoadAnotherNamespace() {
+        Map<String, SqlReader> readers = new HashMap<>();
+        readers.put("user", sqlRegistry -> sqlRegistry.registerSql("userGet", "SQL1"));
+        readers.put("order", sqlRegistry -> {
+            // 주문 SQL은 사용자 SQL을 바탕으로 만든다.
+            sqlRegistry.registerSql("orderGet", sqlService.getSql("userGet") + " JOIN orders");
+        });
+        sqlService.setNamespaceSqlReaders(readers);
+
+        assertThat(sqlService.getSql("orderGet"), is("SQL1 JOIN orders"));
+    }
+
+    @Test(timeout = 10000)
+    public void failOnCircularNamespaces() {
+        Map<String, SqlReader> readers = new HashMap<>();
+        readers.put("order", sqlRegistry -> sqlRegistry.registerSql("orderGet", sqlService.getSql("itemGet")));
+        readers.put("item", sqlRegistry -> sqlRegistry.registerSql("itemGet", sqlService.getSql("orderList")));
+        sqlService.setNamespaceSqlReaders(readers);
+
+        try {
+            sqlService.getSql("orderGet");
+            fail();
+        } catch (SqlRetrievalFailureException e) {
+            assertThat(e.getMessage().contains("order 네임스페이스를 읽는 중에"), is(true));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package springbook.user.sqlservice;
+
+// 값을 바인딩할 준비가 된 SQL과 ? 순서대로 놓인 인자 배열
+public class BoundSql {
+    private final String sql;
+    private final Object[] args;
+
+    public BoundSql(String sql, Object[] args) {
+        this.sql = sql;
+        this.args = args;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+}
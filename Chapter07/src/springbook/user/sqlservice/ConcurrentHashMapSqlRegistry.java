@@ -1,6 +1,7 @@
 package springbook.user.sqlservice;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ConcurrentHashMapSqlRegistry implements UpdatableSqlRegistry {
@@ -27,6 +28,13 @@ public class ConcurrentHashMapSqlRegistry implements UpdatableSqlRegistry {
         sqlMap.put(key, sql);
     }
 
+    // 키마다 따로 반영되므로 다른 스레드는 일부만 반영된 상태를 볼 수 있다. 한 번에 반영해야 하면 CopyOnWriteSqlRegistry를 쓴다.
+    @Override
+    public void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        sqlMap.putAll(sqlmap);
+        sqlMap.keySet().removeAll(removed);
+    }
+
     @Override
     public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
         for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
@@ -0,0 +1,159 @@
+package springbook.user.sqlservice;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class CopyOnWriteSqlRegistry implements UpdatableSqlRegistry, IndexedSqlRegistry {
+    // 읽기는 락 없이 스냅샷 참조 하나만 읽고, 쓰기는 새 스냅샷을 만들어 한 번에 교체한다.
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), new String[0], 0);
+
+    // 읽기에 사용할 스냅샷. 하위 클래스는 최신 스냅샷 대신 고정해 둔 스냅샷을 돌려줄 수 있다.
+    protected Snapshot readSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        Snapshot current = readSnapshot();
+        Integer index = current.indexes.get(key);
+        if (index == null) {
+            // 읽기 스냅샷 이후에 추가된 키는 최신 스냅샷에서 찾는다.
+            current = snapshot;
+            index = current.indexes.get(key);
+        }
+        if (index == null) {
+            throw new SqlNotFoundException(key + "를 이용해서 SQL을 찾을 수 없습니다");
+        }
+        return current.sqls[index];
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlNotFoundException {
+        Integer index = snapshot.indexes.get(key);
+        if (index == null) {
+            throw new SqlNotFoundException(key + "를 이용해서 SQL을 찾을 수 없습니다");
+        }
+        return new IndexedSqlHandle(key, index);
+    }
+
+    @Override
+    public void registerSql(String key, String sql) {
+        registerSql(Collections.singletonMap(key, sql));
+    }
+
+    // 키를 하나씩 등록하면 등록할 때마다 전체를 복사하므로, sqlmap을 읽을 때는 모아서 스냅샷 하나로 반영한다.
+    @Override
+    public synchronized void registerSql(Map<String, String> sqlmap) {
+        apply(sqlmap, Collections.emptySet());
+    }
+
+    // 이미 발급한 핸들의 인덱스를 유지하도록 새 키는 배열 끝에 붙이고, 지운 키의 자리는 비워 둔 채 다시 쓰지 않는다.
+    private void apply(Map<String, String> sqlmap, Set<String> removed) {
+        Snapshot current = snapshot;
+        int added = 0;
+        for (String key : sqlmap.keySet()) {
+            if (!current.indexes.containsKey(key)) {
+                added++;
+            }
+        }
+        boolean removing = removed.stream().anyMatch(current.indexes::containsKey);
+
+        Map<String, Integer> newIndexes = current.indexes;
+        if (added > 0 || removing) {
+            newIndexes = new HashMap<>(current.indexes);
+        }
+        String[] newSqls = Arrays.copyOf(current.sqls, current.sqls.length + added);
+        int next = current.sqls.length;
+        for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+            Integer index = newIndexes.get(entry.getKey());
+            if (index == null) {
+                index = next++;
+                newIndexes.put(entry.getKey(), index);
+            }
+            newSqls[index] = entry.getValue();
+        }
+        if (removing) {
+            for (String key : removed) {
+                Integer index = newIndexes.remove(key);
+                if (index != null) {
+                    newSqls[index] = null;
+                }
+            }
+        }
+        if (added > 0 || removing) {
+            newIndexes = Collections.unmodifiableMap(newIndexes);
+        }
+        snapshot = new Snapshot(newIndexes, newSqls, current.version + 1);
+    }
+
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        updateSql(Collections.singletonMap(key, sql));
+    }
+
+    @Override
+    public synchronized void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        Snapshot current = snapshot;
+        for (String key : sqlmap.keySet()) {
+            if (!current.indexes.containsKey(key)) {
+                throw new SqlUpdateFailureException(key + "에 해당하는 SQL을 찾을 수 없습니다");
+            }
+        }
+
+        String[] newSqls = current.sqls.clone();
+        for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+            newSqls[current.indexes.get(entry.getKey())] = entry.getValue();
+        }
+        snapshot = new Snapshot(current.indexes, newSqls, current.version + 1);
+    }
+
+    // 이미 있는 키는 제자리에서 바꾸므로 등록, 수정, 삭제가 스냅샷 하나로 반영된다.
+    @Override
+    public synchronized void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        apply(sqlmap, removed);
+    }
+
+    public long getVersion() {
+        return readSnapshot().version;
+    }
+
+    protected static final class Snapshot {
+        final Map<String, Integer> indexes;
+        final String[] sqls;
+        final long version;
+
+        Snapshot(Map<String, Integer> indexes, String[] sqls, long version) {
+            this.indexes = indexes;
+            this.sqls = sqls;
+            this.version = version;
+        }
+    }
+
+    private class IndexedSqlHandle implements SqlHandle {
+        private final String key;
+        private final int index;
+
+        IndexedSqlHandle(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public String getSql() {
+            String[] sqls = readSnapshot().sqls;
+            String sql = index < sqls.length ? sqls[index] : snapshot.sqls[index];
+            if (sql != null) {
+                return sql;
+            }
+            // 지운 키다. 다시 등록됐으면 새 자리에 있으므로 키로 찾는다.
+            try {
+                return findSql(key);
+            } catch (SqlNotFoundException e) {
+                throw new SqlRetrievalFailureException(e);
+            }
+        }
+    }
+}
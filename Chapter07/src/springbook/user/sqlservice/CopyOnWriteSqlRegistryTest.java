@@ -0,0 +1,78 @@
+package springbook.user.sqlservice;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CopyOnWriteSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        return new CopyOnWriteSqlRegistry();
+    }
+
+    @Test
+    public void atomicUpdate() throws SqlNotFoundException {
+        checkFindResult("SQL1", "SQL2", "SQL3");
+
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY1", "Modified1");
+        sqlmap.put("KEY9999!@#$", "Modified9999");
+
+        try {
+            sqlRegistry.updateSql(sqlmap);
+            fail();
+        } catch (SqlUpdateFailureException e) {}
+
+        checkFindResult("SQL1", "SQL2", "SQL3");
+    }
+
+    @Test
+    public void handleSeesUpdates() throws SqlNotFoundException {
+        SqlHandle handle = ((IndexedSqlRegistry)sqlRegistry).getSqlHandle("KEY2");
+        assertThat(handle.getSql(), is("SQL2"));
+
+        sqlRegistry.updateSql("KEY2", "Modified2");
+        sqlRegistry.registerSql("KEY4", "SQL4");
+        assertThat(handle.getSql(), is("Modified2"));
+    }
+
+    @Test
+    public void registerManyKeepsHandles() throws SqlNotFoundException {
+        SqlHandle handle = ((IndexedSqlRegistry)sqlRegistry).getSqlHandle("KEY3");
+
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY3", "Replaced3");
+        for (int i = 4; i < 100000; i++) {
+            sqlmap.put("KEY" + i, "SQL" + i);
+        }
+        sqlRegistry.registerSql(sqlmap);
+
+        assertThat(handle.getSql(), is("Replaced3"));
+        assertThat(sqlRegistry.findSql("KEY99999"), is("SQL99999"));
+        assertThat(((CopyOnWriteSqlRegistry)sqlRegistry).getVersion(), is(4L));
+    }
+
+    @Test(expected = SqlNotFoundException.class)
+    public void handleForUnknownKey() throws SqlNotFoundException {
+        ((IndexedSqlRegistry)sqlRegistry).getSqlHandle("SQL999!@#$");
+    }
+
+    @Test
+    public void handleForRemovedKey() throws SqlNotFoundException {
+        SqlHandle handle = ((IndexedSqlRegistry)sqlRegistry).getSqlHandle("KEY2");
+        sqlRegistry.mergeSql(Collections.emptyMap(), Collections.singleton("KEY2"));
+        try {
+            handle.getSql();
+            fail();
+        } catch (SqlRetrievalFailureException e) {}
+
+        sqlRegistry.registerSql("KEY2", "Readded2");
+        assertThat(handle.getSql(), is("Readded2"));
+    }
+}
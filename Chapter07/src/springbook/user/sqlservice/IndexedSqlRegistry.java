@@ -0,0 +1,5 @@
+package springbook.user.sqlservice;
+
+public interface IndexedSqlRegistry extends SqlRegistry {
+    SqlHandle getSqlHandle(String key) throws SqlNotFoundException;
+}
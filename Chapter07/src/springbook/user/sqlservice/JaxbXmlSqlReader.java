@@ -11,23 +11,32 @@ import java.io.InputStream;
 
 public class JaxbXmlSqlReader implements SqlReader {
     public static final String DEFAULT_SQLMAP_FILE = "sqlmap.xml";
+    private static JAXBContext context;
+
     private String sqlmapFile = DEFAULT_SQLMAP_FILE;
 
     public void setSqlmapFile(String sqlmapFile) {
         this.sqlmapFile = sqlmapFile;
     }
 
+    // JAXBContext는 만드는 비용이 크지만 스레드에 안전하므로 한 번만 만들어 공유한다.
+    private static synchronized JAXBContext getContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(Sqlmap.class.getPackage().getName());
+        }
+        return context;
+    }
+
     @Override
     public void read(SqlRegistry sqlRegistry) {
-        String contextPath = Sqlmap.class.getPackage().getName();
         try {
-            JAXBContext context = JAXBContext.newInstance(contextPath);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
+            Unmarshaller unmarshaller = getContext().createUnmarshaller();
             InputStream is = UserDao.class.getResourceAsStream(this.sqlmapFile);
             Sqlmap sqlmap = (Sqlmap)unmarshaller.unmarshal(is);
 
             for (SqlType sql : sqlmap.getSql()) {
                 sqlRegistry.registerSql(sql.getKey(), sql.getValue());
+                SqlHints.register(sqlRegistry, sql.getKey(), SqlHints.from(sql));
             }
         } catch (JAXBException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,168 @@
+package springbook.user.sqlservice;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// :name 형식의 SQL을 한 번만 파싱해 두고 호출마다 값 배열만 만들어 바인딩한다.
+// 컬렉션 값은 IN (?, ?, ...)으로 펼치며, 펼친 SQL은 컬렉션 크기 조합별로 캐시한다.
+public class NamedSql {
+    static final int MAX_EXPANDED_SQL = 256;
+
+    private final String sql;
+    private final ParsedSql parsedSql;
+    private final String placeholderSql;
+    private final String[] parameterNames;
+    private final Map<Arity, String> expandedSql = new ConcurrentHashMap<>();
+
+    public NamedSql(String sql) {
+        this.sql = sql;
+        this.parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+        this.placeholderSql = NamedParameterUtils.substituteNamedParameters(this.parsedSql, null);
+        this.parameterNames = NamedParameterUtils.buildSqlParameterList(this.parsedSql, new EmptySqlParameterSource())
+                .stream().map(SqlParameter::getName).toArray(String[]::new);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    // 이름을 모두 ?로 바꾼 SQL. 컬렉션 값은 하나짜리로 취급한다.
+    public String getPlaceholderSql() {
+        return placeholderSql;
+    }
+
+    public BoundSql bind(Map<String, ?> params) {
+        return bind(new MapSqlParameterSource(params));
+    }
+
+    public BoundSql bind(SqlParameterSource paramSource) {
+        Object[] values = values(paramSource);
+
+        int[] arity = null;
+        int argCount = values.length;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i] instanceof SqlParameterValue ? ((SqlParameterValue)values[i]).getValue() : values[i];
+            if (!(value instanceof Iterable)) {
+                continue;
+            }
+            if (arity == null) {
+                arity = new int[values.length * 2];
+            }
+
+            Collection<?> collection = toCollection((Iterable<?>)value);
+            Object first = collection.isEmpty() ? null : collection.iterator().next();
+            int width = first instanceof Object[] ? ((Object[])first).length : 0;
+            arity[i * 2] = collection.size();
+            arity[i * 2 + 1] = width;
+            argCount += collection.size() * Math.max(width, 1) - 1;
+        }
+
+        if (arity == null) {
+            return new BoundSql(this.placeholderSql, values);
+        }
+        return new BoundSql(expandedSql(new Arity(arity), paramSource), expand(values, argCount));
+    }
+
+    // SQL 타입이 지정된 값은 SqlParameterValue로 감싼다.
+    private Object[] values(SqlParameterSource paramSource) {
+        Object[] values = new Object[this.parameterNames.length];
+        for (int i = 0; i < values.length; i++) {
+            String name = this.parameterNames[i];
+            if (!paramSource.hasValue(name)) {
+                throw new InvalidDataAccessApiUsageException(name + " 파라미터 값이 없습니다: " + this.sql);
+            }
+            Object value = paramSource.getValue(name);
+            int sqlType = paramSource.getSqlType(name);
+            values[i] = sqlType == SqlParameterSource.TYPE_UNKNOWN ? value
+                    : new SqlParameterValue(sqlType, paramSource.getTypeName(name), value);
+        }
+        return values;
+    }
+
+    private String expandedSql(Arity arity, SqlParameterSource paramSource) {
+        String expanded = this.expandedSql.get(arity);
+        if (expanded == null) {
+            expanded = NamedParameterUtils.substituteNamedParameters(this.parsedSql, paramSource);
+            if (this.expandedSql.size() < MAX_EXPANDED_SQL) {
+                this.expandedSql.putIfAbsent(arity, expanded);
+            }
+        }
+        return expanded;
+    }
+
+    int getExpandedSqlCount() {
+        return this.expandedSql.size();
+    }
+
+    private Object[] expand(Object[] values, int argCount) {
+        Object[] args = new Object[argCount];
+        int n = 0;
+        for (Object value : values) {
+            SqlParameterValue typed = value instanceof SqlParameterValue ? (SqlParameterValue)value : null;
+            Object raw = typed != null ? typed.getValue() : value;
+            if (!(raw instanceof Iterable)) {
+                args[n++] = value;
+                continue;
+            }
+            for (Object element : toCollection((Iterable<?>)raw)) {
+                if (element instanceof Object[]) {
+                    for (Object item : (Object[])element) {
+                        args[n++] = typed(typed, item);
+                    }
+                } else {
+                    args[n++] = typed(typed, element);
+                }
+            }
+        }
+        return args;
+    }
+
+    private static Object typed(SqlParameterValue typed, Object value) {
+        return typed != null ? new SqlParameterValue(typed, value) : value;
+    }
+
+    private static Collection<?> toCollection(Iterable<?> iterable) {
+        if (iterable instanceof Collection) {
+            return (Collection<?>)iterable;
+        }
+        List<Object> list = new ArrayList<>();
+        for (Iterator<?> it = iterable.iterator(); it.hasNext(); ) {
+            list.add(it.next());
+        }
+        return list;
+    }
+
+    private static final class Arity {
+        private final int[] sizes;
+        private final int hash;
+
+        Arity(int[] sizes) {
+            this.sizes = sizes;
+            this.hash = Arrays.hashCode(sizes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Arity && Arrays.equals(sizes, ((Arity)o).sizes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package springbook.user.sqlservice;
+
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.Map;
+
+// SQL이 바뀌었을 때만 다시 파싱하고, 그 전까지는 파싱해 둔 NamedSql을 그대로 쓴다.
+public class NamedSqlHandle implements SqlHandle {
+    private final SqlHandle sqlHandle;
+    private volatile NamedSql namedSql;
+
+    public NamedSqlHandle(SqlHandle sqlHandle) {
+        this.sqlHandle = sqlHandle;
+    }
+
+    @Override
+    public String getSql() throws SqlRetrievalFailureException {
+        return sqlHandle.getSql();
+    }
+
+    public NamedSql getNamedSql() throws SqlRetrievalFailureException {
+        String sql = sqlHandle.getSql();
+        NamedSql namedSql = this.namedSql;
+        if (namedSql == null || !namedSql.getSql().equals(sql)) {
+            namedSql = new NamedSql(sql);
+            this.namedSql = namedSql;
+        }
+        return namedSql;
+    }
+
+    public BoundSql bind(SqlParameterSource paramSource) throws SqlRetrievalFailureException {
+        return getNamedSql().bind(paramSource);
+    }
+
+    public BoundSql bind(Map<String, ?> params) throws SqlRetrievalFailureException {
+        return getNamedSql().bind(params);
+    }
+}
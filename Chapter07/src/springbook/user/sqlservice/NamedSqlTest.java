@@ -0,0 +1,88 @@
+package springbook.user.sqlservice;
+
+import org.junit.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class NamedSqlTest {
+    @Test
+    public void bindNamedParameters() {
+        NamedSql namedSql = new NamedSql("UPDATE users SET name = :name, level = :level WHERE id = :id");
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", "user1");
+        params.put("name", "name1");
+        params.put("level", 2);
+
+        BoundSql boundSql = namedSql.bind(params);
+
+        assertThat(boundSql.getSql(), is("UPDATE users SET name = ?, level = ? WHERE id = ?"));
+        assertThat(boundSql.getArgs(), is(new Object[] { "name1", 2, "user1" }));
+        assertThat(boundSql.getSql(), sameInstance(namedSql.getPlaceholderSql()));
+    }
+
+    @Test
+    public void expandInList() {
+        NamedSql namedSql = new NamedSql("SELECT * FROM users WHERE id IN (:ids) AND level = :level");
+
+        BoundSql boundSql = namedSql.bind(new MapSqlParameterSource()
+                .addValue("ids", Arrays.asList("a", "b", "c")).addValue("level", 1));
+        assertThat(boundSql.getSql(), is("SELECT * FROM users WHERE id IN (?, ?, ?) AND level = ?"));
+        assertThat(boundSql.getArgs(), is(new Object[] { "a", "b", "c", 1 }));
+
+        BoundSql sameArity = namedSql.bind(new MapSqlParameterSource()
+                .addValue("ids", Arrays.asList("d", "e", "f")).addValue("level", 2));
+        assertThat(sameArity.getSql(), sameInstance(boundSql.getSql()));
+        assertThat(sameArity.getArgs(), is(new Object[] { "d", "e", "f", 2 }));
+
+        BoundSql single = namedSql.bind(new MapSqlParameterSource()
+                .addValue("ids", Collections.singleton("g")).addValue("level", 3));
+        assertThat(single.getSql(), is("SELECT * FROM users WHERE id IN (?) AND level = ?"));
+        assertThat(namedSql.getExpandedSqlCount(), is(2));
+    }
+
+    @Test
+    public void expandTuplesAndTypedValues() {
+        NamedSql namedSql = new NamedSql("SELECT * FROM users WHERE (id, level) IN (:pairs) OR login IN (:logins)");
+
+        BoundSql boundSql = namedSql.bind(new MapSqlParameterSource()
+                .addValue("pairs", Arrays.asList(new Object[] { "a", 1 }, new Object[] { "b", 2 }))
+                .addValue("logins", Arrays.asList(10, 20), Types.INTEGER));
+
+        assertThat(boundSql.getSql(), is("SELECT * FROM users WHERE (id, level) IN ((?, ?), (?, ?)) OR login IN (?, ?)"));
+        Object[] args = boundSql.getArgs();
+        assertThat(args.length, is(6));
+        assertThat(Arrays.asList(args).subList(0, 4), is(Arrays.<Object>asList("a", 1, "b", 2)));
+        assertThat(((SqlParameterValue)args[4]).getValue(), is(10));
+        assertThat(((SqlParameterValue)args[5]).getSqlType(), is(Types.INTEGER));
+    }
+
+    @Test(expected = InvalidDataAccessApiUsageException.class)
+    public void missingParameter() {
+        new NamedSql("SELECT * FROM users WHERE id = :id").bind(new MapSqlParameterSource());
+    }
+
+    @Test
+    public void handleParsesOnlyWhenSqlChanges() throws SqlNotFoundException {
+        CopyOnWriteSqlRegistry sqlRegistry = new CopyOnWriteSqlRegistry();
+        sqlRegistry.registerSql("KEY1", "SELECT :a");
+        NamedSqlHandle handle = new NamedSqlHandle(sqlRegistry.getSqlHandle("KEY1"));
+
+        NamedSql parsed = handle.getNamedSql();
+        assertThat(handle.getNamedSql(), sameInstance(parsed));
+
+        sqlRegistry.updateSql("KEY1", "SELECT :a, :b");
+        assertThat(handle.bind(new MapSqlParameterSource().addValue("a", 1).addValue("b", 2)).getSql(),
+                is("SELECT ?, ?"));
+    }
+}
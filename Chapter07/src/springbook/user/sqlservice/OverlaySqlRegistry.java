@@ -0,0 +1,106 @@
+package springbook.user.sqlservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// 여러 테넌트가 공유하는 기본 레지스트리 위에 테넌트별로 바꾼 SQL만 따로 담는다.
+// 기본 레지스트리는 읽기만 하므로 모든 테넌트가 하나를 공유하고, 테넌트마다 드는 메모리는 바꾼 SQL 수에 비례한다.
+public class OverlaySqlRegistry implements UpdatableSqlRegistry {
+    // 기본 레지스트리의 SQL을 지웠으면 오버라이드에 이 값을 담아서 가린다. 같은 내용의 SQL과 구별하도록 참조로 비교한다.
+    private static final String REMOVED = new String("REMOVED");
+
+    private final SqlFinder base;
+    // 오버라이드는 보통 몇 개 안 되므로 수정할 때마다 복사하고, 읽기는 락 없이 참조만 읽는다.
+    private volatile Map<String, String> overrides = Collections.emptyMap();
+
+    public OverlaySqlRegistry(SqlFinder base) {
+        this.base = base;
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        String sql = overrides.get(key);
+        if (sql == REMOVED) {
+            throw new SqlNotFoundException(key + "의 SQL이 삭제되었습니다");
+        }
+        if (sql != null) {
+            return sql;
+        }
+        return base.findSql(key);
+    }
+
+    // 기본 레지스트리에 없는 테넌트 전용 SQL도 등록할 수 있다.
+    @Override
+    public void registerSql(String key, String sql) {
+        registerSql(Collections.singletonMap(key, sql));
+    }
+
+    // 기본 레지스트리와 같은 SQL은 오버라이드로 담지 않으므로, 기본 레지스트리를 만든 sqlmap을 다시 등록해도 메모리가 늘지 않는다.
+    @Override
+    public synchronized void registerSql(Map<String, String> sqlmap) {
+        mergeSql(sqlmap, Collections.emptySet());
+    }
+
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        updateSql(Collections.singletonMap(key, sql));
+    }
+
+    @Override
+    public synchronized void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        Map<String, String> current = overrides;
+        for (String key : sqlmap.keySet()) {
+            String override = current.get(key);
+            if (override == REMOVED || override == null && findBaseSql(key) == null) {
+                throw new SqlUpdateFailureException(key + "에 해당하는 SQL을 찾을 수 없습니다");
+            }
+        }
+
+        Map<String, String> newOverrides = new HashMap<>(current);
+        newOverrides.putAll(sqlmap);
+        overrides = newOverrides;
+    }
+
+    @Override
+    public synchronized void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        Map<String, String> newOverrides = new HashMap<>(overrides);
+        for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+            if (entry.getValue().equals(findBaseSql(entry.getKey()))) {
+                newOverrides.remove(entry.getKey());
+            } else {
+                newOverrides.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : removed) {
+            if (findBaseSql(key) != null) {
+                newOverrides.put(key, REMOVED);
+            } else {
+                newOverrides.remove(key);
+            }
+        }
+        overrides = newOverrides.isEmpty() ? Collections.emptyMap() : newOverrides;
+    }
+
+    // 테넌트가 바꾸거나 지운 SQL을 되돌려서 다시 기본 SQL을 사용하게 한다.
+    public synchronized void resetSql(String key) {
+        if (overrides.containsKey(key)) {
+            Map<String, String> newOverrides = new HashMap<>(overrides);
+            newOverrides.remove(key);
+            overrides = newOverrides.isEmpty() ? Collections.emptyMap() : newOverrides;
+        }
+    }
+
+    public int getOverrideCount() {
+        return overrides.size();
+    }
+
+    private String findBaseSql(String key) {
+        try {
+            return base.findSql(key);
+        } catch (SqlNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package springbook.user.sqlservice;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class OverlaySqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    HashMapSqlRegistry base;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        base = new HashMapSqlRegistry();
+        base.registerSql("KEY1", "BASE1");
+        base.registerSql("KEY2", "BASE2");
+        base.registerSql("KEY3", "BASE3");
+        base.registerSql("KEY4", "BASE4");
+        return new OverlaySqlRegistry(base);
+    }
+
+    @Test
+    public void overlaysShareBase() throws SqlNotFoundException {
+        OverlaySqlRegistry tenant1 = new OverlaySqlRegistry(base);
+        OverlaySqlRegistry tenant2 = new OverlaySqlRegistry(base);
+
+        tenant1.updateSql("KEY4", "Tenant1");
+
+        assertThat(tenant1.findSql("KEY4"), is("Tenant1"));
+        assertThat(tenant2.findSql("KEY4"), is("BASE4"));
+        assertThat(base.findSql("KEY4"), is("BASE4"));
+        assertThat(tenant1.getOverrideCount(), is(1));
+        assertThat(tenant2.getOverrideCount(), is(0));
+    }
+
+    @Test
+    public void registerSameAsBase() throws SqlNotFoundException {
+        OverlaySqlRegistry tenant = new OverlaySqlRegistry(base);
+        tenant.updateSql("KEY2", "Modified2");
+
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY1", "BASE1");
+        sqlmap.put("KEY2", "BASE2");
+        sqlmap.put("KEY5", "SQL5");
+        tenant.registerSql(sqlmap);
+
+        assertThat(tenant.findSql("KEY1"), is("BASE1"));
+        assertThat(tenant.findSql("KEY2"), is("BASE2"));
+        assertThat(tenant.findSql("KEY5"), is("SQL5"));
+        assertThat(tenant.getOverrideCount(), is(1));
+    }
+
+    @Test
+    public void resetSql() throws SqlNotFoundException {
+        OverlaySqlRegistry tenant = new OverlaySqlRegistry(base);
+        tenant.updateSql("KEY1", "Modified1");
+        tenant.resetSql("KEY1");
+
+        assertThat(tenant.findSql("KEY1"), is("BASE1"));
+        assertThat(tenant.getOverrideCount(), is(0));
+    }
+
+    @Test
+    public void atomicUpdateWithNotExistingKey() throws SqlNotFoundException {
+        OverlaySqlRegistry tenant = new OverlaySqlRegistry(base);
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY4", "Modified4");
+        sqlmap.put("KEY9999!@#$", "Modified9999");
+
+        try {
+            tenant.updateSql(sqlmap);
+            fail();
+        } catch (SqlUpdateFailureException e) {}
+
+        assertThat(tenant.findSql("KEY4"), is("BASE4"));
+        assertThat(tenant.getOverrideCount(), is(0));
+    }
+
+    @Test
+    public void removeBaseSql() throws SqlNotFoundException {
+        OverlaySqlRegistry tenant = new OverlaySqlRegistry(base);
+        tenant.mergeSql(Collections.emptyMap(), Collections.singleton("KEY4"));
+
+        try {
+            tenant.findSql("KEY4");
+            fail();
+        } catch (SqlNotFoundException e) {}
+        try {
+            tenant.updateSql("KEY4", "Modified4");
+            fail();
+        } catch (SqlUpdateFailureException e) {}
+        assertThat(base.findSql("KEY4"), is("BASE4"));
+
+        tenant.resetSql("KEY4");
+        assertThat(tenant.findSql("KEY4"), is("BASE4"));
+    }
+}
@@ -1,72 +1,477 @@
 package springbook.user.sqlservice;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.oxm.Unmarshaller;
+import springbook.user.sqlservice.compiled.CompiledSqlReader;
 import springbook.user.sqlservice.jaxb.SqlType;
 import springbook.user.sqlservice.jaxb.Sqlmap;
 
+import javax.sql.DataSource;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public class OxmSqlService implements SqlService, SqlServiceStatusMXBean, InitializingBean, DisposableBean {
+    private static final Log log = LogFactory.getLog(OxmSqlService.class);
 
-public class OxmSqlService implements SqlService, InitializingBean {
     private final BaseSqlService baseSqlService = new BaseSqlService();
     private final OxmSqlReader oxmSqlReader = new OxmSqlReader();
     private SqlRegistry sqlRegistry = new HashMapSqlRegistry();
+    private boolean watchSqlmap;
+    private boolean asyncLoading;
+    private DataSource validationDataSource;
+    private volatile SqlmapWatcher sqlmapWatcher;
+    private volatile CompletableFuture<Void> loading = CompletableFuture.completedFuture(null);
+    private final Object lifecycleMonitor = new Object();
+    private Thread loader;
+    private boolean destroyed;
+    private Map<String, String> loadedSql = Collections.emptyMap();
+    private volatile Map<String, SqlHints> loadedHints = Collections.emptyMap();
+    private final Map<String, SqlHints> namespaceHints = new ConcurrentHashMap<>();
 
     public void setUnmarshaller(Unmarshaller unmarshaller) {
         this.oxmSqlReader.setUnmarshaller(unmarshaller);
     }
 
     public void setSqlmap(Resource sqlmap) {
-        this.oxmSqlReader.setSqlmap(sqlmap);
+        this.oxmSqlReader.setSqlmaps(Collections.singletonList(sqlmap));
+    }
+
+    public void setSqlmaps(Resource... sqlmaps) {
+        this.oxmSqlReader.setSqlmaps(Arrays.asList(sqlmaps));
+    }
+
+    public void setSqlmapLocationPattern(String locationPattern) throws IOException {
+        Resource[] sqlmaps = new PathMatchingResourcePatternResolver().getResources(locationPattern);
+        if (sqlmaps.length == 0) {
+            throw new IllegalArgumentException(locationPattern + "에 해당하는 sqlmap이 없습니다.");
+        }
+        // 클래스패스 스캔 순서는 환경마다 다를 수 있으므로 URL 순으로 정렬한다.
+        Arrays.sort(sqlmaps, Comparator.comparing(Resource::getDescription));
+        setSqlmaps(sqlmaps);
+    }
+
+    // 키 접두어(네임스페이스)마다 sqlmap을 따로 두고, 그 네임스페이스의 SQL을 처음 찾을 때 읽는다.
+    // 시작할 때 읽지 않으므로 컴파일된 sqlmap, SQL 검증, sqlmap 감시의 대상이 아니다.
+    public void setNamespaceSqlmaps(Map<String, Resource> namespaceSqlmaps) {
+        Map<String, SqlReader> readers = new HashMap<>();
+        namespaceSqlmaps.forEach((namespace, sqlmap) -> readers.put(namespace, sqlRegistry -> {
+            RecordingSqlRegistry loaded = new RecordingSqlRegistry(sqlmap.getDescription());
+            this.oxmSqlReader.read(sqlmap, loaded);
+            // 다른 접두어의 키가 섞여 있으면 어느 네임스페이스를 먼저 찾느냐에 따라 SQL이 등록되거나 말거나 한다.
+            for (String key : loaded.sqls.keySet()) {
+                if (!key.startsWith(namespace)) {
+                    throw new IllegalArgumentException(sqlmap.getDescription() + "의 " + key + "는 "
+                            + namespace + " 네임스페이스의 키가 아닙니다.");
+                }
+            }
+            sqlRegistry.registerSql(loaded.sqls);
+            this.namespaceHints.putAll(loaded.hints);
+        }));
+        this.baseSqlService.setNamespaceSqlReaders(readers);
+    }
+
+    public void setSchema(Resource schema) {
+        this.oxmSqlReader.setSchema(schema);
+    }
+
+    public void setCompiledSqlmap(Resource compiledSqlmap) {
+        this.oxmSqlReader.setCompiledSqlmap(compiledSqlmap);
     }
 
     public void setSqlRegistry(SqlRegistry sqlRegistry) {
         this.sqlRegistry = sqlRegistry;
     }
 
+    // true면 sqlmap 파일을 감시하다가 바뀌면 reloadSql()로 다시 읽는다. 파일 시스템에 있는 sqlmap만 감시할 수 있다.
+    public void setWatchSqlmap(boolean watchSqlmap) {
+        this.watchSqlmap = watchSqlmap;
+    }
+
+    // true면 sqlmap을 별도 스레드에서 읽어서 애플리케이션 컨텍스트 초기화를 막지 않는다.
+    // 읽기가 끝나기 전에 SQL을 요청하면 끝날 때까지 기다린다.
+    public void setAsyncLoading(boolean asyncLoading) {
+        this.asyncLoading = asyncLoading;
+    }
+
+    // 지정하면 시작할 때 읽어들인 모든 SQL을 이 DataSource에 준비시켜 보고, 실패한 SQL이 있으면 시작하지 않는다.
+    // 서버에서 prepare하는 DataSource여야 한다(SqlValidator 참고). 비동기 로딩과는 같이 쓸 수 없다.
+    public void setValidationDataSource(DataSource validationDataSource) {
+        this.validationDataSource = validationDataSource;
+    }
+
     @Override
     public String getSql(String key) throws SqlRetrievalFailureException {
+        awaitLoading();
         return this.baseSqlService.getSql(key);
     }
 
+    // 읽기가 끝나기 전에 만든 핸들은 처음 SQL을 가져올 때 키를 확인한다.
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlRetrievalFailureException {
+        if (isReady()) {
+            return this.baseSqlService.getSqlHandle(key);
+        }
+
+        return new SqlHandle() {
+            private volatile SqlHandle sqlHandle;
+
+            @Override
+            public String getSql() throws SqlRetrievalFailureException {
+                SqlHandle sqlHandle = this.sqlHandle;
+                if (sqlHandle == null) {
+                    awaitLoading();
+                    sqlHandle = baseSqlService.getSqlHandle(key);
+                    this.sqlHandle = sqlHandle;
+                }
+                return sqlHandle.getSql();
+            }
+        };
+    }
+
+    @Override
+    public SqlHints getSqlHints(String key) {
+        awaitLoading();
+        SqlHints hints = this.loadedHints.get(key);
+        return hints != null ? hints : this.namespaceHints.getOrDefault(key, SqlHints.NONE);
+    }
+
+    @Override
+    public boolean isReady() {
+        CompletableFuture<Void> loading = this.loading;
+        return loading.isDone() && !loading.isCompletedExceptionally();
+    }
+
+    @Override
+    public String getLoadFailure() {
+        CompletableFuture<Void> loading = this.loading;
+        if (!loading.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            loading.join();
+            return null;
+        } catch (CompletionException e) {
+            return String.valueOf(e.getCause());
+        }
+    }
+
+    private void awaitLoading() {
+        try {
+            this.loading.join();
+        } catch (CompletionException e) {
+            throw new SqlRetrievalFailureException("sqlmap을 읽어들이지 못했습니다.", e.getCause());
+        }
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (!this.asyncLoading) {
+            initialize();
+            return;
+        }
+        // 백그라운드에서 검증하면 잘못된 SQL이 있어도 컨텍스트는 이미 시작된 뒤라서 검증하는 의미가 없다.
+        if (this.validationDataSource != null) {
+            throw new IllegalStateException("SQL 검증은 sqlmap을 백그라운드에서 읽을 때는 사용할 수 없습니다.");
+        }
+
+        CompletableFuture<Void> loading = new CompletableFuture<>();
+        this.loading = loading;
+        Thread loader = new Thread(() -> {
+            try {
+                initialize();
+                loading.complete(null);
+            } catch (Throwable e) {
+                loading.completeExceptionally(e);
+            }
+        }, "sqlmap-loader");
+        loader.setDaemon(true);
+        synchronized (this.lifecycleMonitor) {
+            this.loader = loader;
+        }
+        loader.start();
+    }
+
+    private void initialize() throws Exception {
         loadSql();
+        if (this.validationDataSource != null) {
+            validateSql(this.validationDataSource);
+        }
+        if (this.watchSqlmap) {
+            startWatching();
+        }
+    }
+
+    // 백그라운드에서 읽는 중이면 멈추고 끝날 때까지 기다린다. 기다리던 SQL 요청은 실패한다.
+    @Override
+    public void destroy() throws Exception {
+        Thread loader;
+        synchronized (this.lifecycleMonitor) {
+            this.destroyed = true;
+            loader = this.loader;
+            if (this.sqlmapWatcher != null) {
+                this.sqlmapWatcher.close();
+            }
+        }
+
+        if (loader != null) {
+            this.loading.completeExceptionally(new IllegalStateException("SqlService가 종료되었습니다."));
+            loader.interrupt();
+            loader.join();
+        }
     }
 
-    public void loadSql() {
-        this.baseSqlService.setSqlReader(this.oxmSqlReader);
+    public synchronized void loadSql() {
+        // 모두 읽은 뒤에 한 번에 등록해서 레지스트리가 키마다 스냅샷을 다시 만들지 않게 한다.
+        // 모아 둔 SQL은 다시 읽을 때 바뀐 SQL을 가려내는 데 계속 쓴다. 레지스트리와 같은 String을 가리키므로
+        // 추가로 드는 메모리는 맵 엔트리 정도다(5만 개 기준 약 2MB). 일정 개수씩 나눠 등록해도 줄지 않았다.
+        RecordingSqlRegistry loaded = new RecordingSqlRegistry();
+        this.baseSqlService.setSqlReader(registry -> {
+            this.oxmSqlReader.read(loaded);
+            registry.registerSql(loaded.sqls);
+        });
         this.baseSqlService.setSqlRegistry(this.sqlRegistry);
         this.baseSqlService.loadSql();
+        this.loadedSql = loaded.sqls;
+        this.loadedHints = loaded.hints;
+    }
+
+    // sqlmap에 있던 SQL 대신 레지스트리가 실제로 돌려주는 SQL을 검증한다.
+    public void validateSql(DataSource dataSource) throws SqlValidationException {
+        Map<String, String> sqls = new LinkedHashMap<>();
+        for (String key : this.loadedSql.keySet()) {
+            sqls.put(key, this.baseSqlService.getSql(key));
+        }
+        new SqlValidator(dataSource).validate(sqls);
+    }
+
+    // 새 sqlmap을 모두 파싱한 뒤에 추가되거나 바뀌거나 지워진 SQL을 mergeSql 한 번으로 반영하므로
+    // 파싱에 실패하면 기존 SQL이 그대로 남는다. 네임스페이스별 sqlmap에서 읽은 SQL은 다시 읽지 않는다.
+    public synchronized void reloadSql() {
+        if (!(this.sqlRegistry instanceof UpdatableSqlRegistry)) {
+            throw new IllegalStateException("sqlmap을 다시 읽으려면 UpdatableSqlRegistry가 필요합니다");
+        }
+
+        RecordingSqlRegistry reloaded = new RecordingSqlRegistry();
+        this.oxmSqlReader.readSqlmaps(reloaded);
+
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : reloaded.sqls.entrySet()) {
+            // sqlmap에서 바뀌지 않은 키는 건너뛰어서 실행 중에 수정한 SQL이 다시 읽을 때마다 되돌아가지 않게 한다.
+            if (entry.getValue().equals(this.loadedSql.get(entry.getKey()))) {
+                continue;
+            }
+            // 레지스트리가 이미 같은 SQL을 돌려주고 있으면 다시 쓰지 않는다.
+            if (!entry.getValue().equals(findRegisteredSql(entry.getKey()))) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // sqlmap에서 지운 키는 실행 중에 수정했더라도 지운다.
+        Set<String> removed = new LinkedHashSet<>(this.loadedSql.keySet());
+        removed.removeAll(reloaded.sqls.keySet());
+        if (!changes.isEmpty() || !removed.isEmpty()) {
+            ((UpdatableSqlRegistry)this.sqlRegistry).mergeSql(changes, removed);
+        }
+        this.loadedSql = reloaded.sqls;
+        this.loadedHints = reloaded.hints;
+    }
+
+    private String findRegisteredSql(String key) {
+        try {
+            return this.sqlRegistry.findSql(key);
+        } catch (SqlNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void startWatching() throws IOException {
+        if (!(this.sqlRegistry instanceof UpdatableSqlRegistry)) {
+            throw new IllegalStateException("sqlmap을 감시하려면 UpdatableSqlRegistry가 필요합니다");
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Resource sqlmap : this.oxmSqlReader.sqlmaps) {
+            if (!sqlmap.isFile()) {
+                throw new IllegalStateException(sqlmap.getDescription() + "은 파일 시스템에 없으므로 감시할 수 없습니다.");
+            }
+            files.add(sqlmap.getFile().toPath());
+        }
+
+        // 백그라운드에서 읽는 동안 종료됐으면 감시를 시작하지 않는다. 시작한 뒤라면 destroy()가 닫는다.
+        synchronized (this.lifecycleMonitor) {
+            if (this.destroyed) {
+                return;
+            }
+            this.sqlmapWatcher = new SqlmapWatcher(files, this::reloadSql);
+            this.sqlmapWatcher.start();
+        }
+    }
+
+    // 읽으면서 키마다 중복을 확인하므로 한 파일 안에서 같은 키를 두 번 정의해도 뒤의 것이 조용히 이기지 않는다.
+    private static class RecordingSqlRegistry implements SqlHintsRegistry {
+        private final String source;
+        private final Map<String, String> sqls = new LinkedHashMap<>();
+        private final Map<String, SqlHints> hints = new HashMap<>();
+
+        RecordingSqlRegistry() {
+            this("sqlmap");
+        }
+
+        RecordingSqlRegistry(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public void registerSql(String key, String sql) {
+            if (this.sqls.putIfAbsent(key, sql) != null) {
+                throw new DuplicateSqlKeyException(this.source + "에 같은 키가 두 번 정의되어 있습니다: " + key);
+            }
+        }
+
+        @Override
+        public void registerSqlHints(String key, SqlHints hints) {
+            this.hints.put(key, hints);
+        }
+
+        @Override
+        public String findSql(String key) throws SqlNotFoundException {
+            String sql = this.sqls.get(key);
+            if (sql == null) {
+                throw new SqlNotFoundException(key + "에 대한 SQL을 찾을 수 없습니다");
+            }
+            return sql;
+        }
     }
 
     private class OxmSqlReader implements SqlReader {
         private Unmarshaller unmarshaller;
-        private Resource sqlmap = new ClassPathResource("/sqlmap.xml");
+        private List<Resource> sqlmaps = Collections.singletonList(new ClassPathResource("/sqlmap.xml"));
+        private Resource schema;
+        private Resource compiledSqlmap;
 
         public void setUnmarshaller(Unmarshaller unmarshaller) {
             this.unmarshaller = unmarshaller;
         }
 
-        public void setSqlmap(Resource sqlmap) {
-            this.sqlmap = sqlmap;
+        public void setSqlmaps(List<Resource> sqlmaps) {
+            this.sqlmaps = sqlmaps;
+        }
+
+        public void setSchema(Resource schema) {
+            this.schema = schema;
+        }
+
+        public void setCompiledSqlmap(Resource compiledSqlmap) {
+            this.compiledSqlmap = compiledSqlmap;
         }
 
         @Override
         public void read(SqlRegistry sqlRegistry) {
+            // 빌드할 때 만들어 둔 컴파일된 sqlmap이 있으면 XML 파서를 거치지 않고 바로 읽는다.
+            // 원본 sqlmap이 그 뒤에 바뀌었거나 설정한 sqlmap 중 일부만 컴파일했다면 예전 SQL이 쓰이지 않도록 XML을 읽는다.
+            if (this.compiledSqlmap != null && this.compiledSqlmap.exists()) {
+                CompiledSqlReader compiledSqlReader = new CompiledSqlReader();
+                compiledSqlReader.setSqlmap(this.compiledSqlmap);
+                if (compiledSqlReader.isCompiledFrom(this.sqlmaps)) {
+                    compiledSqlReader.read(sqlRegistry);
+                    return;
+                }
+                log.warn(this.compiledSqlmap.getDescription() + "은 설정한 sqlmap " + this.sqlmaps
+                        + "에서 컴파일한 것이 아니므로 XML을 읽습니다. 모든 sqlmap을 같은 순서로 SqlmapCompiler에 넘겨 다시 컴파일하세요.");
+            }
+
+            readSqlmaps(sqlRegistry);
+        }
+
+        public void readSqlmaps(SqlRegistry sqlRegistry) {
+            if (this.sqlmaps.size() == 1) {
+                read(this.sqlmaps.get(0), sqlRegistry);
+                return;
+            }
+
+            // 파싱은 파일마다 병렬로 하고, 중복 검사와 등록은 파일 순서대로 해서 결과가 항상 같게 한다.
+            List<RecordingSqlRegistry> parsed = this.sqlmaps.parallelStream()
+                    .map(this::parse)
+                    .collect(Collectors.toList());
+
+            Map<String, String> merged = new LinkedHashMap<>();
+            Map<String, SqlHints> mergedHints = new HashMap<>();
+            Map<String, List<String>> origins = new TreeMap<>();
+            for (int i = 0; i < parsed.size(); i++) {
+                String description = this.sqlmaps.get(i).getDescription();
+                mergedHints.putAll(parsed.get(i).hints);
+                for (Map.Entry<String, String> entry : parsed.get(i).sqls.entrySet()) {
+                    merged.put(entry.getKey(), entry.getValue());
+                    origins.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(description);
+                }
+            }
+
+            List<String> duplicates = new ArrayList<>();
+            for (Map.Entry<String, List<String>> origin : origins.entrySet()) {
+                if (origin.getValue().size() > 1) {
+                    duplicates.add(origin.getKey() + " " + origin.getValue());
+                }
+            }
+            if (!duplicates.isEmpty()) {
+                throw new DuplicateSqlKeyException("여러 sqlmap에 같은 키가 정의되어 있습니다: " + duplicates);
+            }
+
+            for (Map.Entry<String, String> entry : merged.entrySet()) {
+                sqlRegistry.registerSql(entry.getKey(), entry.getValue());
+                SqlHints.register(sqlRegistry, entry.getKey(), mergedHints.getOrDefault(entry.getKey(), SqlHints.NONE));
+            }
+        }
+
+        private RecordingSqlRegistry parse(Resource sqlmap) {
+            RecordingSqlRegistry parsed = new RecordingSqlRegistry(sqlmap.getDescription());
+            read(sqlmap, parsed);
+            return parsed;
+        }
+
+        private void read(Resource sqlmap, SqlRegistry sqlRegistry) {
+            // 언마샬러가 없으면 오브젝트 트리를 만들지 않고 스트리밍으로 읽어서 바로 등록한다.
+            if (this.unmarshaller == null) {
+                StaxXmlSqlReader staxXmlSqlReader = new StaxXmlSqlReader();
+                staxXmlSqlReader.setSqlmap(sqlmap);
+                if (this.schema != null) {
+                    staxXmlSqlReader.setSchema(this.schema);
+                }
+                staxXmlSqlReader.read(sqlRegistry);
+                return;
+            }
+
             try {
-                Source source = new StreamSource(this.sqlmap.getInputStream());
-                Sqlmap sqlmap = (Sqlmap)this.unmarshaller.unmarshal(source);
+                Source source = new StreamSource(sqlmap.getInputStream());
+                Sqlmap unmarshalled = (Sqlmap)this.unmarshaller.unmarshal(source);
 
-                for (SqlType sql : sqlmap.getSql()) {
+                for (SqlType sql : unmarshalled.getSql()) {
                     sqlRegistry.registerSql(sql.getKey(), sql.getValue());
+                    SqlHints.register(sqlRegistry, sql.getKey(), SqlHints.from(sql));
                 }
             } catch (IOException e) {
-                throw new IllegalArgumentException(this.sqlmap.getFilename() + "을 가져올 수 없습니다.", e);
+                throw new IllegalArgumentException(sqlmap.getFilename() + "을 가져올 수 없습니다.", e);
             }
         }
     }
@@ -0,0 +1,439 @@
+package springbook.user.sqlservice;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import springbook.user.sqlservice.compiled.SqlmapCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class OxmSqlServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    OxmSqlService sqlService;
+
+    @Before
+    public void setUp() {
+        sqlService = new OxmSqlService();
+        sqlService.setSqlRegistry(new ConcurrentHashMapSqlRegistry());
+    }
+
+    @Test
+    public void loadManySqlmaps() throws IOException {
+        sqlService.setSqlmaps(
+                sqlmapFile("user.xml", "<sql key=\"userGet\">SQL1</sql><sql key=\"userAdd\">SQL2</sql>"),
+                sqlmapFile("group.xml", "<sql key=\"groupGet\">SQL3</sql>"));
+        sqlService.loadSql();
+
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+        assertThat(sqlService.getSql("userAdd"), is("SQL2"));
+        assertThat(sqlService.getSql("groupGet"), is("SQL3"));
+    }
+
+    @Test
+    public void loadManySqlmapsWithUnmarshaller() throws Exception {
+        Jaxb2Marshaller unmarshaller = new Jaxb2Marshaller();
+        unmarshaller.setContextPath("springbook.user.sqlservice.jaxb");
+        unmarshaller.afterPropertiesSet();
+        sqlService.setUnmarshaller(unmarshaller);
+
+        sqlService.setSqlmaps(
+                sqlmapFile("user.xml", "<sql key=\"userGet\">SQL1</sql>"),
+                sqlmapFile("group.xml", "<sql key=\"groupGet\">SQL3</sql>"));
+        sqlService.loadSql();
+
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+        assertThat(sqlService.getSql("groupGet"), is("SQL3"));
+    }
+
+    @Test
+    public void loadSqlHints() throws Exception {
+        sqlService.setSqlmaps(sqlmapFile("user.xml",
+                "<sql key=\"userGetAll\" fetchSize=\"1000\" queryTimeout=\"30\" streaming=\"true\">SQL1</sql>"
+                + "<sql key=\"userGet\" maxRows=\"1\">SQL2</sql><sql key=\"userAdd\">SQL3</sql>"));
+        sqlService.loadSql();
+
+        assertThat(sqlService.getSqlHints("userGetAll"), is(new SqlHints(1000, 30, -1, true)));
+        assertThat(sqlService.getSqlHints("userGet"), is(new SqlHints(-1, -1, 1, false)));
+        assertThat(sqlService.getSqlHints("userAdd"), is(SqlHints.NONE));
+
+        Jaxb2Marshaller unmarshaller = new Jaxb2Marshaller();
+        unmarshaller.setContextPath("springbook.user.sqlservice.jaxb");
+        unmarshaller.afterPropertiesSet();
+        sqlService.setUnmarshaller(unmarshaller);
+        sqlService.loadSql();
+
+        assertThat(sqlService.getSqlHints("userGetAll"), is(new SqlHints(1000, 30, -1, true)));
+        assertThat(sqlService.getSqlHints("userGet"), is(new SqlHints(-1, -1, 1, false)));
+    }
+
+    @Test
+    public void loadNamespaceSqlmapsOnFirstUse() throws Exception {
+        sqlService.setSqlmap(sqlmapFile("user.xml", "<sql key=\"userGet\">SQL1</sql>"));
+        Map<String, Resource> namespaceSqlmaps = new HashMap<>();
+        namespaceSqlmaps.put("group", sqlmapFile("group.xml", "<sql key=\"groupGet\" maxRows=\"1\">SQL2</sql>"));
+        namespaceSqlmaps.put("order", sqlmapFile("order.xml", "<sql key=\"orderGet\">SQL3</sql><sql key=\"userList\">SQL4</sql>"));
+        sqlService.setNamespaceSqlmaps(namespaceSqlmaps);
+        sqlService.afterPropertiesSet();
+
+        assertThat(sqlService.getSql("groupGet"), is("SQL2"));
+        assertThat(sqlService.getSqlHints("groupGet"), is(new SqlHints(-1, -1, 1, false)));
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+
+        // 다른 네임스페이스의 키가 섞인 sqlmap은 읽지 않는다.
+        try {
+            sqlService.getSql("orderGet");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("userList"));
+        }
+    }
+
+    @Test
+    public void applySqlHints() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource());
+        assertThat(SqlHints.NONE.applyTo(jdbcTemplate) == jdbcTemplate, is(true));
+
+        JdbcTemplate hinted = new SqlHints(1000, 30, 10, false).applyTo(jdbcTemplate);
+        assertThat(hinted.getFetchSize(), is(1000));
+        assertThat(hinted.getQueryTimeout(), is(30));
+        assertThat(hinted.getMaxRows(), is(10));
+        assertThat(jdbcTemplate.getFetchSize(), is(-1));
+    }
+
+    @Test
+    public void sqlHintsKeepJdbcTemplateSettings() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource());
+        DataAccessException translated = new DataIntegrityViolationException("translated");
+        jdbcTemplate.setExceptionTranslator((task, sql, ex) -> translated);
+        jdbcTemplate.setQueryTimeout(5);
+        jdbcTemplate.setIgnoreWarnings(false);
+
+        JdbcTemplate hinted = new SqlHints(1000, -1, -1, false).applyTo(jdbcTemplate);
+        assertThat(hinted.getExceptionTranslator().translate("task", "SQL", new SQLException()) == translated, is(true));
+        assertThat(hinted.getQueryTimeout(), is(5));
+        assertThat(hinted.isIgnoreWarnings(), is(false));
+        assertThat(hinted.getFetchSize(), is(1000));
+
+        assertThat(new SqlHints(-1, -1, -1, true).applyTo(jdbcTemplate) == jdbcTemplate, is(true));
+    }
+
+    @Test
+    public void loadByLocationPattern() throws IOException {
+        sqlmapFile("user-sqlmap.xml", "<sql key=\"userGet\">SQL1</sql>");
+        sqlmapFile("group-sqlmap.xml", "<sql key=\"groupGet\">SQL3</sql>");
+        sqlmapFile("other.xml", "<sql key=\"otherGet\">SQL4</sql>");
+
+        sqlService.setSqlmapLocationPattern("file:" + folder.getRoot().getPath() + "/*-sqlmap.xml");
+        sqlService.loadSql();
+
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+        assertThat(sqlService.getSql("groupGet"), is("SQL3"));
+        try {
+            sqlService.getSql("otherGet");
+            fail();
+        } catch (SqlRetrievalFailureException e) {}
+    }
+
+    @Test
+    public void duplicateKeys() throws IOException {
+        sqlService.setSqlmaps(
+                sqlmapFile("a.xml", "<sql key=\"KEY2\">SQL2</sql><sql key=\"KEY1\">SQL1</sql>"),
+                sqlmapFile("b.xml", "<sql key=\"KEY1\">SQL1</sql><sql key=\"KEY2\">SQL2</sql>"),
+                sqlmapFile("c.xml", "<sql key=\"KEY3\">SQL3</sql>"));
+
+        try {
+            sqlService.loadSql();
+            fail();
+        } catch (DuplicateSqlKeyException e) {
+            assertThat(e.getMessage(), containsString("KEY1 [file [" + folder.getRoot().getPath() + "/a.xml]"));
+            assertThat(e.getMessage().indexOf("KEY1") < e.getMessage().indexOf("KEY2"), is(true));
+        }
+
+        try {
+            sqlService.getSql("KEY3");
+            fail();
+        } catch (SqlRetrievalFailureException e) {}
+    }
+
+    @Test(expected = DuplicateSqlKeyException.class)
+    public void duplicateKeysInOneSqlmap() throws IOException {
+        sqlService.setSqlmap(sqlmapFile("a.xml", "<sql key=\"KEY1\">SQL1</sql><sql key=\"KEY1\">SQL2</sql>"));
+        sqlService.loadSql();
+    }
+
+    @Test
+    public void duplicateKeysInOneOfManySqlmaps() throws IOException {
+        sqlService.setSqlmaps(
+                sqlmapFile("a.xml", "<sql key=\"KEY1\">SQL1</sql>"),
+                sqlmapFile("b.xml", "<sql key=\"KEY2\">SQL2</sql><sql key=\"KEY2\">SQL3</sql>"));
+
+        try {
+            sqlService.loadSql();
+            fail();
+        } catch (DuplicateSqlKeyException e) {
+            assertThat(e.getMessage(), containsString("b.xml"));
+            assertThat(e.getMessage(), containsString("KEY2"));
+        }
+    }
+
+    @Test
+    public void skipStaleCompiledSqlmap() throws Exception {
+        FileSystemResource sqlmap = sqlmapFile("user.xml", "<sql key=\"userGet\">SQL1</sql>");
+        File compiled = new File(folder.getRoot(), "user.bin");
+        SqlmapCompiler.main(new String[] { sqlmap.getPath(), compiled.getPath() });
+
+        sqlService.setSqlmap(sqlmap);
+        sqlService.setCompiledSqlmap(new FileSystemResource(compiled));
+        sqlService.loadSql();
+        assertThat(sqlService.getSql("userGet"), is("SQL1"));
+
+        // 컴파일한 뒤에 고친 sqlmap은 컴파일된 파일보다 우선한다.
+        sqlmapFile("user.xml", "<sql key=\"userGet\">SQL2</sql>");
+        OxmSqlService staleSqlService = new OxmSqlService();
+        staleSqlService.setSqlRegistry(new ConcurrentHashMapSqlRegistry());
+        staleSqlService.setSqlmap(sqlmap);
+        staleSqlService.setCompiledSqlmap(new FileSystemResource(compiled));
+        staleSqlService.loadSql();
+        assertThat(staleSqlService.getSql("userGet"), is("SQL2"));
+    }
+
+    @Test
+    public void reloadChangedSql() throws IOException {
+        FileSystemResource sqlmap = sqlmapFile("sqlmap.xml",
+                "<sql key=\"KEY1\">SQL1</sql><sql key=\"KEY2\">SQL2</sql>");
+        sqlService.setSqlmap(sqlmap);
+        sqlService.loadSql();
+        SqlHandle handle = sqlService.getSqlHandle("KEY1");
+
+        sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">Modified1</sql><sql key=\"KEY3\">SQL3</sql>");
+        sqlService.reloadSql();
+
+        assertThat(handle.getSql(), is("Modified1"));
+        assertThat(sqlService.getSql("KEY3"), is("SQL3"));
+        try {
+            sqlService.getSql("KEY2");
+            fail();
+        } catch (SqlRetrievalFailureException e) {}
+    }
+
+    @Test
+    public void reloadInOneMerge() throws IOException {
+        List<Map<String, String>> merges = new ArrayList<>();
+        List<Set<String>> removals = new ArrayList<>();
+        CopyOnWriteSqlRegistry sqlRegistry = new CopyOnWriteSqlRegistry() {
+            @Override
+            public void mergeSql(Map<String, String> sqlmap, Set<String> removed) {
+                merges.add(sqlmap);
+                removals.add(removed);
+                super.mergeSql(sqlmap, removed);
+            }
+        };
+        sqlService.setSqlRegistry(sqlRegistry);
+        FileSystemResource sqlmap = sqlmapFile("sqlmap.xml",
+                "<sql key=\"KEY1\">SQL1</sql><sql key=\"KEY2\">SQL2</sql><sql key=\"KEY4\">SQL4</sql>");
+        sqlService.setSqlmap(sqlmap);
+        sqlService.loadSql();
+        sqlRegistry.updateSql("KEY2", "Runtime2");
+
+        sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">Modified1</sql><sql key=\"KEY2\">SQL2</sql>"
+                + "<sql key=\"KEY3\">SQL3</sql>");
+        long version = sqlRegistry.getVersion();
+        sqlService.reloadSql();
+
+        assertThat(merges.size(), is(1));
+        assertThat(merges.get(0).keySet(), is((Set<String>)new HashSet<>(Arrays.asList("KEY1", "KEY3"))));
+        assertThat(removals.get(0), is(Collections.singleton("KEY4")));
+        assertThat(sqlRegistry.getVersion(), is(version + 1));
+        assertThat(sqlService.getSql("KEY1"), is("Modified1"));
+        assertThat(sqlService.getSql("KEY2"), is("Runtime2"));
+        assertThat(sqlService.getSql("KEY3"), is("SQL3"));
+    }
+
+    @Test
+    public void reloadMalformedSqlmap() throws IOException {
+        sqlService.setSqlmap(sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">SQL1</sql>"));
+        sqlService.loadSql();
+
+        Files.write(new File(folder.getRoot(), "sqlmap.xml").toPath(),
+                "<sqlmap xmlns=\"http://www.epril.com/sqlmap\"><sql key=\"KEY1\">Modified1".getBytes(StandardCharsets.UTF_8));
+        try {
+            sqlService.reloadSql();
+            fail();
+        } catch (IllegalArgumentException e) {}
+
+        assertThat(sqlService.getSql("KEY1"), is("SQL1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void reloadNeedsUpdatableSqlRegistry() throws IOException {
+        sqlService.setSqlRegistry(new HashMapSqlRegistry());
+        sqlService.setSqlmap(sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">SQL1</sql>"));
+        sqlService.loadSql();
+
+        sqlService.reloadSql();
+    }
+
+    @Test
+    public void loadAsynchronously() throws Exception {
+        CountDownLatch registering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        sqlService.setSqlRegistry(new ConcurrentHashMapSqlRegistry() {
+            @Override
+            public void registerSql(String key, String sql) {
+                registering.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.registerSql(key, sql);
+            }
+        });
+        sqlService.setSqlmap(sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\" fetchSize=\"10\">SQL1</sql>"));
+        sqlService.setAsyncLoading(true);
+
+        sqlService.afterPropertiesSet();
+        registering.await();
+        assertThat(sqlService.isReady(), is(false));
+        SqlHandle handle = sqlService.getSqlHandle("KEY1");
+
+        release.countDown();
+        assertThat(handle.getSql(), is("SQL1"));
+        assertThat(sqlService.isReady(), is(true));
+        assertThat(sqlService.getSqlHints("KEY1").getFetchSize(), is(10));
+        assertThat(sqlService.getLoadFailure(), is(nullValue()));
+    }
+
+    @Test
+    public void asynchronousLoadFailure() throws Exception {
+        sqlService.setSqlmap(new FileSystemResource(new File(folder.getRoot(), "missing.xml")));
+        sqlService.setAsyncLoading(true);
+        sqlService.afterPropertiesSet();
+
+        try {
+            sqlService.getSql("KEY1");
+            fail();
+        } catch (SqlRetrievalFailureException e) {
+            assertThat(e.getCause() instanceof IllegalArgumentException, is(true));
+        }
+        assertThat(sqlService.isReady(), is(false));
+        assertThat(sqlService.getLoadFailure(), containsString("missing.xml"));
+    }
+
+    @Test
+    public void destroyWhileLoadingAsynchronously() throws Exception {
+        CountDownLatch registering = new CountDownLatch(1);
+        sqlService.setSqlRegistry(new ConcurrentHashMapSqlRegistry() {
+            @Override
+            public void registerSql(String key, String sql) {
+                registering.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.registerSql(key, sql);
+            }
+        });
+        sqlService.setSqlmap(sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">SQL1</sql>"));
+        sqlService.setWatchSqlmap(true);
+        sqlService.setAsyncLoading(true);
+        long watchers = countThreads("sqlmap-watcher");
+
+        sqlService.afterPropertiesSet();
+        registering.await();
+        sqlService.destroy();
+
+        assertThat(countThreads("sqlmap-loader"), is(0L));
+        assertThat(countThreads("sqlmap-watcher"), is(watchers));
+        assertThat(sqlService.isReady(), is(false));
+        try {
+            sqlService.getSql("KEY1");
+            fail();
+        } catch (SqlRetrievalFailureException expected) {
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void validationNeedsSynchronousLoading() throws Exception {
+        sqlService.setSqlmap(sqlmapFile("sqlmap.xml", "<sql key=\"KEY1\">SQL1</sql>"));
+        sqlService.setValidationDataSource(new SimpleDriverDataSource());
+        sqlService.setAsyncLoading(true);
+        sqlService.afterPropertiesSet();
+    }
+
+    private static long countThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals(name)).count();
+    }
+
+    @Test
+    public void validateAgainstDataSource() throws IOException {
+        EmbeddedDatabase db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+        try {
+            new JdbcTemplate(db).execute("create table users (id varchar(10) primary key, name varchar(20))");
+            sqlService.setSqlmap(sqlmapFile("sqlmap.xml",
+                    "<sql key=\"userGet\">select * from users where id = ?</sql>"
+                    + "<sql key=\"userUpdate\">update users set nmae = ? where id = ?</sql>"
+                    + "<sql key=\"userAdd\">insert into users(id, name) values(?, ?)</sql>"
+                    + "<sql key=\"groupGet\">select * from groups where id = ?</sql>"));
+            sqlService.setValidationDataSource(db);
+
+            try {
+                sqlService.afterPropertiesSet();
+                fail();
+            } catch (SqlValidationException e) {
+                assertThat(new ArrayList<>(e.getFailures().keySet()), is(Arrays.asList("groupGet", "userUpdate")));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+
+            sqlService.setSqlmap(sqlmapFile("sqlmap.xml",
+                    "<sql key=\"userGet\">select * from users where id = ?</sql>"
+                    + "<sql key=\"userAdd\">insert into users(id, name) values(?, ?)</sql>"));
+            sqlService.loadSql();
+            sqlService.validateSql(db);
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    private FileSystemResource sqlmapFile(String name, String sqls) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<sqlmap xmlns=\"http://www.epril.com/sqlmap\">" + sqls + "</sqlmap>";
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return new FileSystemResource(file);
+    }
+}
@@ -0,0 +1,6 @@
+package springbook.user.sqlservice;
+
+// SQL을 찾기만 하는 쪽. 매핑된 스냅샷처럼 등록을 받을 수 없는 저장소는 이 인터페이스만 구현한다.
+public interface SqlFinder {
+    String findSql(String key) throws SqlNotFoundException;
+}
@@ -0,0 +1,5 @@
+package springbook.user.sqlservice;
+
+public interface SqlHandle {
+    String getSql() throws SqlRetrievalFailureException;
+}
@@ -0,0 +1,97 @@
+package springbook.user.sqlservice;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import springbook.user.sqlservice.jaxb.SqlType;
+
+import java.util.Objects;
+
+// sqlmap의 <sql>에 지정한 실행 힌트. JdbcTemplate과 같이 -1은 드라이버 기본값을 사용한다는 뜻이다.
+// streaming은 결과를 리스트로 모으지 말고 한 행씩 처리해야 하는 SQL임을 나타낸다.
+public class SqlHints {
+    public static final SqlHints NONE = new SqlHints(-1, -1, -1, false);
+
+    private final int fetchSize;
+    private final int queryTimeout;
+    private final int maxRows;
+    private final boolean streaming;
+
+    public SqlHints(int fetchSize, int queryTimeout, int maxRows, boolean streaming) {
+        this.fetchSize = fetchSize;
+        this.queryTimeout = queryTimeout;
+        this.maxRows = maxRows;
+        this.streaming = streaming;
+    }
+
+    public static SqlHints from(SqlType sql) {
+        return new SqlHints(
+                sql.getFetchSize() == null ? -1 : sql.getFetchSize(),
+                sql.getQueryTimeout() == null ? -1 : sql.getQueryTimeout(),
+                sql.getMaxRows() == null ? -1 : sql.getMaxRows(),
+                sql.isStreaming() != null && sql.isStreaming());
+    }
+
+    // 힌트가 있으면 레지스트리가 SqlHintsRegistry일 때만 전달한다.
+    public static void register(SqlRegistry sqlRegistry, String key, SqlHints hints) {
+        if (!hints.isEmpty() && sqlRegistry instanceof SqlHintsRegistry) {
+            ((SqlHintsRegistry)sqlRegistry).registerSqlHints(key, hints);
+        }
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public boolean isEmpty() {
+        return equals(NONE);
+    }
+
+    // 적용할 힌트가 없으면 주어진 JdbcTemplate을 그대로 돌려준다.
+    // 있으면 주어진 JdbcTemplate의 설정을 그대로 복사하고 지정한 힌트만 덮어쓴 새 JdbcTemplate을 돌려준다.
+    public JdbcTemplate applyTo(JdbcTemplate jdbcTemplate) {
+        if (fetchSize == -1 && queryTimeout == -1 && maxRows == -1) {
+            return jdbcTemplate;
+        }
+
+        JdbcTemplate hinted = new JdbcTemplate();
+        hinted.setDataSource(jdbcTemplate.getDataSource());
+        // 기본 예외 변환기는 처음 쓸 때 DB에 접속해서 만들어지므로 미리 꺼내지 않고 쓸 때마다 원래 것에 맡긴다.
+        hinted.setExceptionTranslator((task, sql, ex) -> jdbcTemplate.getExceptionTranslator().translate(task, sql, ex));
+        hinted.setLazyInit(jdbcTemplate.isLazyInit());
+        hinted.setIgnoreWarnings(jdbcTemplate.isIgnoreWarnings());
+        hinted.setSkipResultsProcessing(jdbcTemplate.isSkipResultsProcessing());
+        hinted.setSkipUndeclaredResults(jdbcTemplate.isSkipUndeclaredResults());
+        hinted.setResultsMapCaseInsensitive(jdbcTemplate.isResultsMapCaseInsensitive());
+        hinted.setFetchSize(fetchSize == -1 ? jdbcTemplate.getFetchSize() : fetchSize);
+        hinted.setQueryTimeout(queryTimeout == -1 ? jdbcTemplate.getQueryTimeout() : queryTimeout);
+        hinted.setMaxRows(maxRows == -1 ? jdbcTemplate.getMaxRows() : maxRows);
+        return hinted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SqlHints sqlHints = (SqlHints) o;
+        return fetchSize == sqlHints.fetchSize &&
+                queryTimeout == sqlHints.queryTimeout &&
+                maxRows == sqlHints.maxRows &&
+                streaming == sqlHints.streaming;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fetchSize, queryTimeout, maxRows, streaming);
+    }
+}
@@ -0,0 +1,6 @@
+package springbook.user.sqlservice;
+
+// 실행 힌트를 찾기만 하는 쪽. 힌트가 없는 SQL이면 SqlHints.NONE을 돌려준다.
+public interface SqlHintsFinder {
+    SqlHints findSqlHints(String key);
+}
@@ -0,0 +1,5 @@
+package springbook.user.sqlservice;
+
+public interface SqlHintsRegistry extends SqlRegistry {
+    void registerSqlHints(String key, SqlHints hints);
+}
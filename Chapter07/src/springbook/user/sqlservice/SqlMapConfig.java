@@ -2,6 +2,59 @@ package springbook.user.sqlservice;
 
 import org.springframework.core.io.Resource;
 
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
 public interface SqlMapConfig {
     Resource getSqlMapResource();
+
+    default Resource[] getSqlMapResources() {
+        return new Resource[] { getSqlMapResource() };
+    }
+
+    // 키 접두어(네임스페이스)별 sqlmap. 시작할 때 읽지 않고 그 네임스페이스의 SQL을 처음 찾을 때 읽는다.
+    default Map<String, Resource> getNamespaceSqlMapResources() {
+        return Collections.emptyMap();
+    }
+
+    default Resource getCompiledSqlMapResource() {
+        return null;
+    }
+
+    // null이 아니면 sqlmap을 읽기 전에 이 스키마로 검증한다.
+    default Resource getSqlMapSchemaResource() {
+        return null;
+    }
+
+    // true면 sqlmap 파일을 감시하다가 바뀌면 다시 읽어서 추가, 수정, 삭제된 SQL을 한 번에 반영한다.
+    // sqlmap이 파일 시스템에 있어야 한다(jar 안의 sqlmap은 감시할 수 없다).
+    default boolean isWatchSqlMap() {
+        return false;
+    }
+
+    // true면 sqlmap을 백그라운드에서 읽고, 그동안 SQL 요청은 읽기가 끝날 때까지 기다린다.
+    // 시작을 막지 않으므로 SQL 검증(getSqlValidationDataSource)과 같이 쓸 수 없다.
+    default boolean isAsyncSqlLoading() {
+        return false;
+    }
+
+    // null이 아니면 시작할 때 모든 SQL을 이 DataSource에 준비시켜 검증한다.
+    // 서버에서 prepare하는 DataSource여야 한다. MySQL이면 useServerPrepStmts=true로 연결한다.
+    // 검증에 실패하면 시작하지 않으므로 isAsyncSqlLoading()과 같이 쓸 수 없다.
+    default DataSource getSqlValidationDataSource() {
+        return null;
+    }
+
+    // null이 아니면 SqlmapCompiler로 만든 이 파일을 매핑해서 SQL을 찾는다. 같은 호스트의 JVM들이 페이지 캐시를 공유한다.
+    // 이때는 sqlmap을 읽지 않으므로 네임스페이스별 sqlmap을 포함한 sqlmap, 스키마, 감시, 비동기 로딩 설정은 쓰이지 않고 SQL 검증과는 같이 쓸 수 없다.
+    default Path getSqlSnapshotPath() {
+        return null;
+    }
+
+    // null이면 수정된 SQL을 저널에 남기지 않는다.
+    default Path getSqlUpdateJournalDirectory() {
+        return null;
+    }
 }
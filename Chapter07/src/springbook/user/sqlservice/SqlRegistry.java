@@ -1,6 +1,12 @@
 package springbook.user.sqlservice;
 
-public interface SqlRegistry {
+import java.util.Map;
+
+public interface SqlRegistry extends SqlFinder {
     void registerSql(String key, String sql);
-    String findSql(String key) throws SqlNotFoundException;
+
+    // sqlmap 전체를 읽어 한 번에 등록할 때 사용한다. 한 번에 반영할 수 있는 레지스트리는 재정의한다.
+    default void registerSql(Map<String, String> sqlmap) {
+        sqlmap.forEach(this::registerSql);
+    }
 }
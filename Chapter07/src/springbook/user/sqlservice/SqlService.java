@@ -2,4 +2,17 @@ package springbook.user.sqlservice;
 
 public interface SqlService {
     String getSql(String key) throws SqlRetrievalFailureException;
+
+    default SqlHandle getSqlHandle(String key) throws SqlRetrievalFailureException {
+        getSql(key);
+        return () -> getSql(key);
+    }
+
+    default NamedSqlHandle getNamedSqlHandle(String key) throws SqlRetrievalFailureException {
+        return new NamedSqlHandle(getSqlHandle(key));
+    }
+
+    default SqlHints getSqlHints(String key) {
+        return SqlHints.NONE;
+    }
 }
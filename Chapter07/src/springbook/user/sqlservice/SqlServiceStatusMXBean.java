@@ -0,0 +1,9 @@
+package springbook.user.sqlservice;
+
+// 헬스 체크에서 sqlmap을 모두 읽었는지 확인할 때 사용한다.
+public interface SqlServiceStatusMXBean {
+    boolean isReady();
+
+    // 읽기에 실패했으면 원인, 아니면 null
+    String getLoadFailure();
+}
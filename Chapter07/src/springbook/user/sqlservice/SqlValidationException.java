@@ -0,0 +1,17 @@
+package springbook.user.sqlservice;
+
+import java.util.Map;
+
+public class SqlValidationException extends RuntimeException {
+    private final Map<String, String> failures;
+
+    public SqlValidationException(Map<String, String> failures) {
+        super("DB에서 준비할 수 없는 SQL이 있습니다: " + failures);
+        this.failures = failures;
+    }
+
+    // 키 순으로 정렬된 키와 오류 메시지
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+}
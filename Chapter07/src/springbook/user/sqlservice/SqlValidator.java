@@ -0,0 +1,66 @@
+package springbook.user.sqlservice;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.IntStream;
+
+// 모든 SQL을 실제 DB에 준비(prepare)시켜 문법 오류나 없는 테이블, 컬럼을 미리 찾는다.
+// DataSource는 서버에서 prepare하도록 설정되어 있어야 한다. 클라이언트에서만 prepare하는 드라이버는 SQL을 서버에 보내지 않아
+// 아무 오류도 찾지 못한다. MySQL(Connector/J)은 useServerPrepStmts=true를 지정해야 한다.
+public class SqlValidator {
+    private final DataSource dataSource;
+    private int concurrency = 4;
+
+    public SqlValidator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // 동시에 사용할 커넥션 수. SQL은 커넥션마다 나눠서 준비한다.
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void validate(Map<String, String> sqls) throws SqlValidationException {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(sqls.entrySet());
+        int connections = Math.max(1, Math.min(concurrency, entries.size()));
+        Map<String, String> failures = new ConcurrentSkipListMap<>();
+
+        IntStream.range(0, connections).parallel().forEach(n -> {
+            try (Connection connection = dataSource.getConnection()) {
+                for (int i = n; i < entries.size(); i += connections) {
+                    Map.Entry<String, String> entry = entries.get(i);
+                    try {
+                        prepare(connection, entry.getValue());
+                    } catch (SQLException e) {
+                        failures.put(entry.getKey(), e.getMessage());
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("SQL 검증에 사용할 DB 커넥션을 가져올 수 없습니다.", e);
+            }
+        });
+
+        if (!failures.isEmpty()) {
+            throw new SqlValidationException(failures);
+        }
+    }
+
+    // 드라이버에 따라 prepareStatement만으로는 서버에 보내지 않으므로 메타데이터까지 요청한다.
+    // 클라이언트에서만 prepare하면 메타데이터 요청도 오류 없이 지나갈 수 있으므로 이것으로 서버 prepare를 대신할 수는 없다.
+    // :name 파라미터는 ?로 바꿔서 준비한다.
+    private void prepare(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(new NamedSql(sql).getPlaceholderSql())) {
+            try {
+                ps.getMetaData();
+            } catch (SQLFeatureNotSupportedException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package springbook.user.sqlservice;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class SqlmapWatcher implements Runnable {
+    private static final Log log = LogFactory.getLog(SqlmapWatcher.class);
+
+    // 에디터는 파일을 여러 번에 나눠 쓰기도 하므로 변경이 잠잠해질 때까지 기다렸다가 다시 읽는다.
+    private static final long QUIET_PERIOD_MILLIS = 200;
+
+    private final Set<Path> files = new HashSet<>();
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public SqlmapWatcher(List<Path> files, Runnable onChange) throws IOException {
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        Set<Path> dirs = new HashSet<>();
+        for (Path file : files) {
+            Path absolute = file.toAbsolutePath().normalize();
+            this.files.add(absolute);
+            dirs.add(absolute.getParent());
+        }
+        for (Path dir : dirs) {
+            dir.register(this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        this.thread = new Thread(this, "sqlmap-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!isSqlmapChanged(this.watchService.take())) {
+                    continue;
+                }
+
+                WatchKey key;
+                while ((key = this.watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    isSqlmapChanged(key);
+                }
+
+                try {
+                    this.onChange.run();
+                } catch (RuntimeException e) {
+                    log.warn("변경된 sqlmap을 적용하지 못해 기존 SQL을 유지합니다", e);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // close()가 호출되면 감시를 끝낸다.
+        }
+    }
+
+    private boolean isSqlmapChanged(WatchKey key) {
+        boolean changed = false;
+        Path dir = (Path)key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && this.files.contains(dir.resolve((Path)event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,106 @@
+package springbook.user.sqlservice;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class StaxXmlSqlReader implements SqlReader {
+    public static final String SQLMAP_NAMESPACE = "http://www.epril.com/sqlmap";
+
+    private Resource sqlmap = new ClassPathResource("/sqlmap.xml");
+    private Schema schema;
+
+    public void setSqlmap(Resource sqlmap) {
+        this.sqlmap = sqlmap;
+    }
+
+    public void setSchema(Resource schema) {
+        try (InputStream is = schema.getInputStream()) {
+            this.schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                    .newSchema(new StreamSource(is, schema.getURI().toString()));
+        } catch (IOException | SAXException e) {
+            throw new IllegalArgumentException(schema.getFilename() + "을 스키마로 사용할 수 없습니다.", e);
+        }
+    }
+
+    @Override
+    public void read(SqlRegistry sqlRegistry) {
+        if (this.schema != null) {
+            validate();
+        }
+
+        try (InputStream is = this.sqlmap.getInputStream()) {
+            XMLStreamReader reader = createInputFactory().createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && isSqlElement(reader)) {
+                        String key = reader.getAttributeValue(null, "key");
+                        if (key == null) {
+                            throw new IllegalArgumentException(
+                                    this.sqlmap.getFilename() + "에 key가 없는 sql 엘리먼트가 있습니다.");
+                        }
+                        SqlHints hints = readHints(reader);
+                        sqlRegistry.registerSql(key, reader.getElementText());
+                        SqlHints.register(sqlRegistry, key, hints);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new IllegalArgumentException(this.sqlmap.getFilename() + "을 가져올 수 없습니다.", e);
+        }
+    }
+
+    private SqlHints readHints(XMLStreamReader reader) {
+        String streaming = reader.getAttributeValue(null, "streaming");
+        return new SqlHints(
+                readInt(reader, "fetchSize"),
+                readInt(reader, "queryTimeout"),
+                readInt(reader, "maxRows"),
+                "true".equals(streaming) || "1".equals(streaming));
+    }
+
+    private int readInt(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(this.sqlmap.getFilename() + "의 " + name + " 값이 숫자가 아닙니다: " + value, e);
+        }
+    }
+
+    private void validate() {
+        try (InputStream is = this.sqlmap.getInputStream()) {
+            this.schema.newValidator().validate(new StreamSource(is));
+        } catch (IOException | SAXException e) {
+            throw new IllegalArgumentException(this.sqlmap.getFilename() + "이 스키마에 맞지 않습니다.", e);
+        }
+    }
+
+    private boolean isSqlElement(XMLStreamReader reader) {
+        return "sql".equals(reader.getLocalName()) && SQLMAP_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    private XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,96 @@
+package springbook.user.sqlservice;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import springbook.user.dao.UserDao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StaxXmlSqlReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    StaxXmlSqlReader sqlReader;
+    SqlRegistry sqlRegistry;
+
+    @Before
+    public void setUp() {
+        sqlReader = new StaxXmlSqlReader();
+        sqlRegistry = new HashMapSqlRegistry();
+    }
+
+    @Test
+    public void readUserSqlmap() throws SqlNotFoundException {
+        sqlReader.setSqlmap(new ClassPathResource("sqlmap.xml", UserDao.class));
+        sqlReader.setSchema(new ClassPathResource("sqlmap.xsd", SqlService.class));
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("userGet"), is("SELECT * FROM users WHERE id = ?"));
+        assertThat(sqlRegistry.findSql("userGetCount"), is("SELECT COUNT(*) FROM users"));
+    }
+
+    @Test
+    public void readEscapedText() throws IOException, SqlNotFoundException {
+        sqlReader.setSqlmap(sqlmapFile("<sql key=\"KEY1\">SELECT * FROM t WHERE a &lt; ? AND b = 'x'</sql>"
+                + "<sql key=\"KEY2\"><![CDATA[SELECT * FROM t WHERE a > ?]]></sql>"));
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("KEY1"), is("SELECT * FROM t WHERE a < ? AND b = 'x'"));
+        assertThat(sqlRegistry.findSql("KEY2"), is("SELECT * FROM t WHERE a > ?"));
+    }
+
+    @Test
+    public void readSqlHints() throws IOException, SqlNotFoundException {
+        HintsRecordingSqlRegistry sqlRegistry = new HintsRecordingSqlRegistry();
+        sqlReader.setSqlmap(sqlmapFile("<sql key=\"KEY1\" fetchSize=\"500\" streaming=\"true\">SQL1</sql>"
+                + "<sql key=\"KEY2\">SQL2</sql>"));
+        sqlReader.setSchema(new ClassPathResource("sqlmap.xsd", SqlService.class));
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("KEY1"), is("SQL1"));
+        assertThat(sqlRegistry.hints.get("KEY1"), is(new SqlHints(500, -1, -1, true)));
+        assertThat(sqlRegistry.hints.containsKey("KEY2"), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSqlHint() throws IOException {
+        sqlReader.setSqlmap(sqlmapFile("<sql key=\"KEY1\" fetchSize=\"many\">SQL1</sql>"));
+        sqlReader.read(new HintsRecordingSqlRegistry());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSqlmap() throws IOException {
+        sqlReader.setSqlmap(sqlmapFile("<sql>SELECT 1</sql>"));
+        sqlReader.setSchema(new ClassPathResource("sqlmap.xsd", SqlService.class));
+        sqlReader.read(sqlRegistry);
+    }
+
+    private FileSystemResource sqlmapFile(String sqls) throws IOException {
+        File file = folder.newFile("sqlmap.xml");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<sqlmap xmlns=\"http://www.epril.com/sqlmap\">" + sqls + "</sqlmap>";
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return new FileSystemResource(file);
+    }
+
+    static class HintsRecordingSqlRegistry extends HashMapSqlRegistry implements SqlHintsRegistry {
+        final Map<String, SqlHints> hints = new HashMap<>();
+
+        @Override
+        public void registerSqlHints(String key, SqlHints hints) {
+            this.hints.put(key, hints);
+        }
+    }
+}
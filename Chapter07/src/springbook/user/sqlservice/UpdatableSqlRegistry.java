@@ -1,8 +1,19 @@
 package springbook.user.sqlservice;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 public interface UpdatableSqlRegistry extends SqlRegistry {
     public void updateSql(String key, String sql) throws SqlUpdateFailureException;
     public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException;
+
+    // 있는 키는 수정하고 없는 키는 등록한다. sqlmap을 다시 읽을 때처럼 둘이 섞인 변경을 한 번에 반영할 때 사용한다.
+    default void mergeSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        mergeSql(sqlmap, Collections.emptySet());
+    }
+
+    // mergeSql(Map)에 더해 removed의 키를 지운다. 없는 키는 무시한다.
+    // 등록, 수정, 삭제를 따로 부르면 그 사이의 중간 상태가 보이므로 한 번의 호출로 넘기고, 구현은 가능하면 한 번에 반영한다.
+    void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException;
 }
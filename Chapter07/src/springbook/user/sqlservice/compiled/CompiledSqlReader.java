@@ -0,0 +1,82 @@
+package springbook.user.sqlservice.compiled;
+
+import org.springframework.core.io.Resource;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlReader;
+import springbook.user.sqlservice.SqlRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class CompiledSqlReader implements SqlReader {
+    private Resource sqlmap;
+
+    public void setSqlmap(Resource sqlmap) {
+        this.sqlmap = sqlmap;
+    }
+
+    // 원본 sqlmap을 고친 뒤 다시 컴파일하지 않았다면 false를 돌려준다. 예전 포맷의 파일도 최신이 아닌 것으로 본다.
+    public boolean isCompiledFrom(List<Resource> sqlmaps) {
+        try (DataInputStream in = new DataInputStream(this.sqlmap.getInputStream())) {
+            if (in.readInt() != CompiledSqlmapWriter.MAGIC || in.readInt() != CompiledSqlmapWriter.VERSION) {
+                return false;
+            }
+            in.readInt();
+            return in.readLong() == CompiledSqlmapWriter.sourceHash(sqlmaps);
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(this.sqlmap.getFilename() + "을 가져올 수 없습니다.", e);
+        }
+    }
+
+    @Override
+    public void read(SqlRegistry sqlRegistry) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(this.sqlmap.getInputStream()))) {
+            if (in.readInt() != CompiledSqlmapWriter.MAGIC || in.readInt() != CompiledSqlmapWriter.VERSION) {
+                throw new IllegalArgumentException(this.sqlmap.getFilename() + "은 지원하지 않는 sqlmap 포맷입니다.");
+            }
+
+            int count = in.readInt();
+            in.readLong();
+            int[] keyLengths = new int[count];
+            int[] sqlLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                in.readInt();
+                keyLengths[i] = in.readInt();
+                in.readInt();
+                sqlLengths[i] = in.readInt();
+            }
+
+            // 데이터 영역은 인덱스 순서대로 키와 SQL이 이어져 있으므로 순서대로 읽으면 된다.
+            for (int i = 0; i < count; i++) {
+                String key = readString(in, keyLengths[i]);
+                String sql = readString(in, sqlLengths[i]);
+                sqlRegistry.registerSql(key, sql);
+            }
+
+            readHints(in, sqlRegistry);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(this.sqlmap.getFilename() + "을 가져올 수 없습니다.", e);
+        }
+    }
+
+    private void readHints(DataInputStream in, SqlRegistry sqlRegistry) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in, in.readInt());
+            SqlHints hints = new SqlHints(in.readInt(), in.readInt(), in.readInt(), in.readBoolean());
+            SqlHints.register(sqlRegistry, key, hints);
+        }
+    }
+
+    private String readString(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package springbook.user.sqlservice.compiled;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import springbook.user.sqlservice.DuplicateSqlKeyException;
+import springbook.user.sqlservice.HashMapSqlRegistry;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CompiledSqlReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead() throws IOException, SqlNotFoundException {
+        CompiledSqlmapWriter writer = new CompiledSqlmapWriter();
+        writer.registerSql("KEY2", "SQL2");
+        writer.registerSql("KEY1", "SQL1");
+        writer.registerSql("한글키", "SELECT '한글'");
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.write(os);
+
+        CompiledSqlReader sqlReader = new CompiledSqlReader();
+        sqlReader.setSqlmap(new ByteArrayResource(os.toByteArray()));
+        SqlRegistry sqlRegistry = new HashMapSqlRegistry();
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("KEY1"), is("SQL1"));
+        assertThat(sqlRegistry.findSql("KEY2"), is("SQL2"));
+        assertThat(sqlRegistry.findSql("한글키"), is("SELECT '한글'"));
+    }
+
+    @Test
+    public void writeAndReadHints() throws IOException, SqlNotFoundException {
+        CompiledSqlmapWriter writer = new CompiledSqlmapWriter();
+        writer.registerSql("KEY1", "SQL1");
+        writer.registerSql("KEY2", "SQL2");
+        writer.registerSqlHints("KEY1", new SqlHints(1000, 30, -1, true));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.write(os);
+
+        CompiledSqlReader sqlReader = new CompiledSqlReader();
+        sqlReader.setSqlmap(new ByteArrayResource(os.toByteArray()));
+        CompiledSqlmapWriter copy = new CompiledSqlmapWriter();
+        sqlReader.read(copy);
+
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+        copy.write(copied);
+        assertThat(copied.toByteArray(), is(os.toByteArray()));
+        assertThat(copy.findSql("KEY2"), is("SQL2"));
+    }
+
+    @Test
+    public void compileUserSqlmap() throws IOException, SqlNotFoundException {
+        File compiled = new File(folder.getRoot(), "sqlmap.bin");
+        SqlmapCompiler.main(new String[] {
+                "src/springbook/user/dao/sqlmap.xml", compiled.getPath(), "src/springbook/user/sqlservice/sqlmap.xsd" });
+
+        CompiledSqlReader sqlReader = new CompiledSqlReader();
+        sqlReader.setSqlmap(new FileSystemResource(compiled));
+        SqlRegistry sqlRegistry = new HashMapSqlRegistry();
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("userGet"), is("SELECT * FROM users WHERE id = ?"));
+        assertThat(sqlReader.isCompiledFrom(Collections.singletonList(
+                new FileSystemResource("src/springbook/user/dao/sqlmap.xml"))), is(true));
+        assertThat(sqlReader.isCompiledFrom(Collections.singletonList(
+                new ByteArrayResource("<sqlmap/>".getBytes()))), is(false));
+    }
+
+    @Test
+    public void compileSeveralSqlmaps() throws IOException, SqlNotFoundException {
+        File userSqlmap = sqlmapFile("user-sqlmap.xml", "<sql key=\"userGet\" fetchSize=\"10\">SQL1</sql>");
+        File groupSqlmap = sqlmapFile("group-sqlmap.xml", "<sql key=\"groupGet\">SQL2</sql>");
+        File compiled = new File(folder.getRoot(), "sqlmap.bin");
+        SqlmapCompiler.main(new String[] { userSqlmap.getPath() + "," + groupSqlmap.getPath(), compiled.getPath() });
+
+        CompiledSqlReader sqlReader = new CompiledSqlReader();
+        sqlReader.setSqlmap(new FileSystemResource(compiled));
+        SqlRegistry sqlRegistry = new HashMapSqlRegistry();
+        sqlReader.read(sqlRegistry);
+
+        assertThat(sqlRegistry.findSql("userGet"), is("SQL1"));
+        assertThat(sqlRegistry.findSql("groupGet"), is("SQL2"));
+        assertThat(sqlReader.isCompiledFrom(Arrays.asList(
+                new FileSystemResource(userSqlmap), new FileSystemResource(groupSqlmap))), is(true));
+        assertThat(sqlReader.isCompiledFrom(Collections.singletonList(new FileSystemResource(userSqlmap))), is(false));
+    }
+
+    @Test(expected = DuplicateSqlKeyException.class)
+    public void duplicateKeysAcrossCompiledSqlmaps() throws IOException {
+        File userSqlmap = sqlmapFile("user-sqlmap.xml", "<sql key=\"userGet\">SQL1</sql>");
+        File otherSqlmap = sqlmapFile("other-sqlmap.xml", "<sql key=\"userGet\">SQL2</sql>");
+        SqlmapCompiler.main(new String[] {
+                userSqlmap.getPath() + "," + otherSqlmap.getPath(), new File(folder.getRoot(), "sqlmap.bin").getPath() });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFormat() {
+        CompiledSqlReader sqlReader = new CompiledSqlReader();
+        sqlReader.setSqlmap(new ByteArrayResource(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+        sqlReader.read(new HashMapSqlRegistry());
+    }
+
+    private File sqlmapFile(String name, String sqls) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<sqlmap xmlns=\"http://www.epril.com/sqlmap\">" + sqls + "</sqlmap>").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
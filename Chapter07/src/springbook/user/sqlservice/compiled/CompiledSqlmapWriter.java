@@ -0,0 +1,162 @@
+package springbook.user.sqlservice.compiled;
+
+import org.springframework.core.io.Resource;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlHintsRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 등록된 SQL을 컴파일된 sqlmap 포맷으로 저장한다.
+ *
+ * <pre>
+ * int magic, int version, int count, long sourceHash                 -- sourceHash는 원본 sqlmap 내용의 해시, 모르면 0
+ * count x (int keyOffset, int keyLength, int sqlOffset, int sqlLength)  -- 키의 UTF-8 바이트 순으로 정렬
+ * UTF-8 데이터 영역                                                   -- 오프셋은 데이터 영역 시작 기준
+ * int hintCount, hintCount x (int keyLength, key, int fetchSize, int queryTimeout, int maxRows, byte streaming)
+ * </pre>
+ *
+ * 힌트 영역은 파일 끝에 붙어 있으므로 힌트를 모르는 리더도 그대로 읽을 수 있다.
+ */
+public class CompiledSqlmapWriter implements SqlHintsRegistry {
+    public static final int MAGIC = 0x53514C4D;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 20;
+    public static final int INDEX_ENTRY_SIZE = 16;
+
+    private final Map<String, String> sqlMap = new HashMap<>();
+    private final Map<String, SqlHints> hints = new TreeMap<>();
+    private long sourceHash;
+
+    public void setSourceHash(long sourceHash) {
+        this.sourceHash = sourceHash;
+    }
+
+    @Override
+    public void registerSql(String key, String sql) {
+        sqlMap.put(key, sql);
+    }
+
+    @Override
+    public void registerSqlHints(String key, SqlHints hints) {
+        this.hints.put(key, hints);
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        String sql = sqlMap.get(key);
+        if (sql == null) {
+            throw new SqlNotFoundException(key + "에 대한 SQL을 찾을 수 없습니다");
+        }
+        return sql;
+    }
+
+    // 임시 파일에 쓴 뒤 옮기므로 스냅샷을 매핑하고 있는 다른 JVM은 중간 상태의 파일을 보지 않는다.
+    public void save(Path snapshot) throws IOException {
+        Path dir = snapshot.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, snapshot.getFileName().toString(), ".tmp");
+        try {
+            // 옮기기 전에 내용을 디스크에 내려서 교체된 파일이 비어 있는 일이 없게 한다.
+            try (FileOutputStream fos = new FileOutputStream(temp.toFile());
+                 OutputStream os = new BufferedOutputStream(fos)) {
+                write(os);
+                fos.getFD().sync();
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public void write(OutputStream os) throws IOException {
+        List<byte[][]> entries = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sqlMap.entrySet()) {
+            entries.add(new byte[][] {
+                    entry.getKey().getBytes(StandardCharsets.UTF_8),
+                    entry.getValue().getBytes(StandardCharsets.UTF_8) });
+        }
+        entries.sort((e1, e2) -> compare(e1[0], e2[0]));
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        out.writeLong(sourceHash);
+
+        int offset = 0;
+        for (byte[][] entry : entries) {
+            out.writeInt(offset);
+            out.writeInt(entry[0].length);
+            out.writeInt(offset + entry[0].length);
+            out.writeInt(entry[1].length);
+            offset += entry[0].length + entry[1].length;
+        }
+        for (byte[][] entry : entries) {
+            out.write(entry[0]);
+            out.write(entry[1]);
+        }
+
+        out.writeInt(hints.size());
+        for (Map.Entry<String, SqlHints> entry : hints.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(entry.getValue().getFetchSize());
+            out.writeInt(entry.getValue().getQueryTimeout());
+            out.writeInt(entry.getValue().getMaxRows());
+            out.writeBoolean(entry.getValue().isStreaming());
+        }
+        out.flush();
+    }
+
+    // 타임스탬프는 jar로 묶이거나 복사되면 믿을 수 없으므로 원본 내용으로 컴파일된 sqlmap이 최신인지 판단한다.
+    public static long sourceHash(List<Resource> sqlmaps) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[8192];
+        for (Resource sqlmap : sqlmaps) {
+            try (InputStream is = sqlmap.getInputStream()) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    static int compare(byte[] b1, byte[] b2) {
+        int length = Math.min(b1.length, b2.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (b1[i] & 0xff) - (b2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return b1.length - b2.length;
+    }
+}
@@ -0,0 +1,160 @@
+package springbook.user.sqlservice.compiled;
+
+import springbook.user.sqlservice.SqlFinder;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlHintsFinder;
+import springbook.user.sqlservice.SqlNotFoundException;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// 스냅샷은 빌드할 때 만들어지는 읽기 전용 파일이므로 SQL을 찾기만 한다. 수정은 OverlaySqlRegistry를 얹어서 한다.
+// SQL은 매핑한 영역에만 두고 찾을 때마다 디코딩한다. 힌트는 몇 개 안 되므로 열 때 읽어 둔다.
+public class MappedSqlRegistry implements SqlFinder, SqlHintsFinder {
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int dataStart;
+    private final Map<String, SqlHints> hints;
+
+    // 파일을 읽기 전용으로 매핑하므로 같은 스냅샷을 여는 JVM들은 OS 페이지 캐시를 공유한다.
+    public MappedSqlRegistry(Path snapshot) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(snapshot + "은 매핑하기에 너무 큽니다.");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(snapshot + "을 가져올 수 없습니다.", e);
+        }
+
+        if (buffer.limit() < CompiledSqlmapWriter.HEADER_SIZE
+                || buffer.getInt(0) != CompiledSqlmapWriter.MAGIC
+                || buffer.getInt(4) != CompiledSqlmapWriter.VERSION) {
+            throw new IllegalArgumentException(snapshot + "은 지원하지 않는 sqlmap 포맷입니다.");
+        }
+        this.count = buffer.getInt(8);
+        long indexEnd = CompiledSqlmapWriter.HEADER_SIZE + (long) count * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+        if (count < 0 || indexEnd > buffer.limit()) {
+            throw new IllegalArgumentException(snapshot + "의 항목 수(" + count + ")가 파일 크기와 맞지 않습니다.");
+        }
+        this.dataStart = (int) indexEnd;
+
+        // 데이터 영역은 인덱스 순서대로 이어서 쓰이므로 마지막 항목이 파일 안에 있으면 나머지도 모두 파일 안에 있다.
+        long dataEnd = dataStart;
+        if (count > 0) {
+            int last = CompiledSqlmapWriter.HEADER_SIZE + (count - 1) * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+            int sqlOffset = buffer.getInt(last + 8);
+            int sqlLength = buffer.getInt(last + 12);
+            dataEnd = (long) dataStart + sqlOffset + sqlLength;
+            if (sqlOffset < 0 || sqlLength < 0 || dataEnd > buffer.limit()) {
+                throw new IllegalArgumentException(snapshot + "의 데이터 영역이 잘려 있습니다.");
+            }
+        }
+        this.hints = readHints(snapshot, (int) dataEnd);
+    }
+
+    // 힌트 영역은 데이터 영역 바로 뒤에 있다. 음수 길이나 영역을 넘는 위치는 파일이 잘렸거나 깨진 것이다.
+    private Map<String, SqlHints> readHints(Path snapshot, int position) {
+        Map<String, SqlHints> hints = new HashMap<>();
+        try {
+            ByteBuffer in = buffer.duplicate();
+            in.position(position);
+            int hintCount = in.getInt();
+            for (int i = 0; i < hintCount; i++) {
+                byte[] key = new byte[in.getInt()];
+                in.get(key);
+                hints.put(new String(key, StandardCharsets.UTF_8),
+                        new SqlHints(in.getInt(), in.getInt(), in.getInt(), in.get() != 0));
+            }
+            if (hintCount < 0 || in.hasRemaining()) {
+                throw new IllegalArgumentException(snapshot + "의 힌트 영역이 잘못되었습니다.");
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException(snapshot + "의 힌트 영역이 잘려 있습니다.", e);
+        }
+        return hints.isEmpty() ? Collections.emptyMap() : hints;
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        int index = indexOf(key);
+        if (index < 0) {
+            throw new SqlNotFoundException(key + "에 대한 SQL을 찾을 수 없습니다");
+        }
+
+        int entry = CompiledSqlmapWriter.HEADER_SIZE + index * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+        return decode(buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+    }
+
+    @Override
+    public SqlHints findSqlHints(String key) {
+        return hints.getOrDefault(key, SqlHints.NONE);
+    }
+
+    private int indexOf(String key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = CompiledSqlmapWriter.HEADER_SIZE + mid * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+            int cmp = compare(buffer.getInt(entry), buffer.getInt(entry + 4), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // 조회마다 키를 바이트 배열로 만들지 않도록, 키를 UTF-8로 한 바이트씩 인코딩하면서 저장된 키와 비교한다.
+    private int compare(int offset, int length, String key) {
+        int position = dataStart + offset;
+        int end = position + length;
+        for (int i = 0; i < key.length(); ) {
+            int codePoint = key.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int encodedLength = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            for (int j = 0; j < encodedLength; j++) {
+                if (position == end) {
+                    return -1;
+                }
+                int diff = (buffer.get(position++) & 0xff) - utf8Byte(codePoint, encodedLength, j);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+        }
+        return position == end ? 0 : 1;
+    }
+
+    private static int utf8Byte(int codePoint, int encodedLength, int index) {
+        if (encodedLength == 1) {
+            return codePoint;
+        }
+        int shift = 6 * (encodedLength - 1 - index);
+        if (index == 0) {
+            return ((0xff00 >> encodedLength) & 0xff) | (codePoint >> shift);
+        }
+        return 0x80 | ((codePoint >> shift) & 0x3f);
+    }
+
+    private String decode(int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(dataStart + offset);
+        byte[] bytes = new byte[length];
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package springbook.user.sqlservice.compiled;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import springbook.user.sqlservice.BaseSqlService;
+import springbook.user.sqlservice.OverlaySqlRegistry;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlNotFoundException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MappedSqlRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MappedSqlRegistry sqlRegistry;
+
+    @Before
+    public void setUp() throws IOException {
+        CompiledSqlmapWriter writer = new CompiledSqlmapWriter();
+        for (int i = 1; i <= 100; i++) {
+            writer.registerSql("KEY" + i, "SQL" + i);
+        }
+        writer.registerSql("한글키", "SELECT '한글'");
+        writer.registerSql("café", "SQL2B");
+        writer.registerSql("KEY\uD83D\uDE00", "SQL4B");
+        writer.registerSqlHints("KEY7", new SqlHints(500, 10, -1, true));
+        writer.registerSqlHints("한글키", new SqlHints(-1, -1, 100, false));
+
+        Path snapshot = folder.getRoot().toPath().resolve("sqlmap.bin");
+        writer.save(snapshot);
+        sqlRegistry = new MappedSqlRegistry(snapshot);
+    }
+
+    @Test
+    public void find() throws SqlNotFoundException {
+        for (int i = 1; i <= 100; i++) {
+            assertThat(sqlRegistry.findSql("KEY" + i), is("SQL" + i));
+        }
+        assertThat(sqlRegistry.findSql("KEY7"), is("SQL7"));
+        assertThat(sqlRegistry.findSql("한글키"), is("SELECT '한글'"));
+        assertThat(sqlRegistry.findSql("café"), is("SQL2B"));
+        assertThat(sqlRegistry.findSql("KEY\uD83D\uDE00"), is("SQL4B"));
+    }
+
+    @Test
+    public void findHints() {
+        assertThat(sqlRegistry.findSqlHints("KEY7"), is(new SqlHints(500, 10, -1, true)));
+        assertThat(sqlRegistry.findSqlHints("한글키"), is(new SqlHints(-1, -1, 100, false)));
+        assertThat(sqlRegistry.findSqlHints("KEY8"), is(SqlHints.NONE));
+    }
+
+    // 스냅샷 모드의 SqlService는 리더 없이 스냅샷을 그대로 찾으므로 오버레이에 옮겨 담는 SQL이 없다.
+    @Test
+    public void serveWithoutReader() throws Exception {
+        OverlaySqlRegistry overlay = new OverlaySqlRegistry(sqlRegistry);
+        BaseSqlService sqlService = new BaseSqlService();
+        sqlService.setSqlRegistry(overlay);
+        sqlService.setSqlHintsFinder(sqlRegistry);
+        sqlService.afterPropertiesSet();
+
+        assertThat(sqlService.getSql("KEY7"), is("SQL7"));
+        assertThat(sqlService.getSqlHints("KEY7").isStreaming(), is(true));
+        assertThat(overlay.getOverrideCount(), is(0));
+
+        overlay.updateSql("KEY7", "Modified7");
+        assertThat(sqlService.getSql("KEY7"), is("Modified7"));
+        assertThat(overlay.getOverrideCount(), is(1));
+    }
+
+    @Test(expected = SqlNotFoundException.class)
+    public void unknownMultibyteKey() throws SqlNotFoundException {
+        sqlRegistry.findSql("KEY\uD83D");
+    }
+
+    @Test(expected = SqlNotFoundException.class)
+    public void unknownKey() throws SqlNotFoundException {
+        sqlRegistry.findSql("KEY");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFormat() throws IOException {
+        new MappedSqlRegistry(folder.newFile("empty.bin").toPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedSnapshot() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("sqlmap.bin");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Path truncated = folder.getRoot().toPath().resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        new MappedSqlRegistry(truncated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedHints() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("sqlmap.bin");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Path truncated = folder.getRoot().toPath().resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        new MappedSqlRegistry(truncated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedCount() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("sqlmap.bin");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+        Path corrupted = folder.getRoot().toPath().resolve("corrupted.bin");
+        Files.write(corrupted, bytes);
+        new MappedSqlRegistry(corrupted);
+    }
+}
@@ -0,0 +1,71 @@
+package springbook.user.sqlservice.compiled;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import springbook.user.sqlservice.DuplicateSqlKeyException;
+import springbook.user.sqlservice.SqlHints;
+import springbook.user.sqlservice.SqlHintsRegistry;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.StaxXmlSqlReader;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 빌드할 때 sqlmap XML을 컴파일된 sqlmap으로 변환한다.
+ *
+ * <pre>
+ * java springbook.user.sqlservice.compiled.SqlmapCompiler &lt;sqlmap.xml&gt;[,&lt;sqlmap.xml&gt;...] &lt;sqlmap.bin&gt; [sqlmap.xsd]
+ * </pre>
+ *
+ * 여러 sqlmap은 SqlService에 설정한 순서대로 쉼표로 나열한다. 설정한 sqlmap 전체의 해시가 맞아야 컴파일된 sqlmap을 쓴다.
+ */
+public class SqlmapCompiler {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SqlmapCompiler <sqlmap.xml>[,<sqlmap.xml>...] <sqlmap.bin> [sqlmap.xsd]");
+            System.exit(1);
+        }
+
+        List<Resource> sqlmaps = new ArrayList<>();
+        for (String path : args[0].split(",")) {
+            sqlmaps.add(new FileSystemResource(path));
+        }
+
+        CompiledSqlmapWriter writer = new CompiledSqlmapWriter();
+        Set<String> keys = new HashSet<>();
+        for (Resource sqlmap : sqlmaps) {
+            StaxXmlSqlReader sqlReader = new StaxXmlSqlReader();
+            sqlReader.setSqlmap(sqlmap);
+            if (args.length > 2) {
+                sqlReader.setSchema(new FileSystemResource(args[2]));
+            }
+            sqlReader.read(new SqlHintsRegistry() {
+                @Override
+                public void registerSql(String key, String sql) {
+                    if (!keys.add(key)) {
+                        throw new DuplicateSqlKeyException("여러 sqlmap에 같은 키가 정의되어 있습니다: " + key + " " + sqlmap.getDescription());
+                    }
+                    writer.registerSql(key, sql);
+                }
+
+                @Override
+                public void registerSqlHints(String key, SqlHints hints) {
+                    writer.registerSqlHints(key, hints);
+                }
+
+                @Override
+                public String findSql(String key) throws SqlNotFoundException {
+                    return writer.findSql(key);
+                }
+            });
+        }
+        writer.setSourceHash(CompiledSqlmapWriter.sourceHash(sqlmaps));
+
+        writer.save(Paths.get(args[1]));
+    }
+}
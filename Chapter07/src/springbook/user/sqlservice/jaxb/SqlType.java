@@ -25,6 +25,10 @@ import javax.xml.bind.annotation.XmlValue;
  *   &lt;simpleContent&gt;
  *     &lt;extension base="&lt;http://www.w3.org/2001/XMLSchema&gt;string"&gt;
  *       &lt;attribute name="key" use="required" type="{http://www.w3.org/2001/XMLSchema}string" /&gt;
+ *       &lt;attribute name="fetchSize" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="queryTimeout" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="maxRows" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="streaming" type="{http://www.w3.org/2001/XMLSchema}boolean" /&gt;
  *     &lt;/extension&gt;
  *   &lt;/simpleContent&gt;
  * &lt;/complexType&gt;
@@ -42,6 +46,14 @@ public class SqlType {
     protected String value;
     @XmlAttribute(name = "key", required = true)
     protected String key;
+    @XmlAttribute(name = "fetchSize")
+    protected Integer fetchSize;
+    @XmlAttribute(name = "queryTimeout")
+    protected Integer queryTimeout;
+    @XmlAttribute(name = "maxRows")
+    protected Integer maxRows;
+    @XmlAttribute(name = "streaming")
+    protected Boolean streaming;
 
     /**
      * value 속성의 값을 가져옵니다.
@@ -91,4 +103,100 @@ public class SqlType {
         this.key = value;
     }
 
+    /**
+     * fetchSize 속성의 값을 가져옵니다.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * fetchSize 속성의 값을 설정합니다.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setFetchSize(Integer value) {
+        this.fetchSize = value;
+    }
+
+    /**
+     * queryTimeout 속성의 값을 가져옵니다.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * queryTimeout 속성의 값을 설정합니다.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setQueryTimeout(Integer value) {
+        this.queryTimeout = value;
+    }
+
+    /**
+     * maxRows 속성의 값을 가져옵니다.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * maxRows 속성의 값을 설정합니다.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxRows(Integer value) {
+        this.maxRows = value;
+    }
+
+    /**
+     * streaming 속성의 값을 가져옵니다.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Boolean }
+     *     
+     */
+    public Boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * streaming 속성의 값을 설정합니다.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Boolean }
+     *     
+     */
+    public void setStreaming(Boolean value) {
+        this.streaming = value;
+    }
+
 }
@@ -0,0 +1,281 @@
+package springbook.user.sqlservice.journal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import springbook.user.sqlservice.IndexedSqlRegistry;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlRetrievalFailureException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// 수정된 SQL을 저널에 남겨서 재시작한 뒤에도 유지한다.
+// 시작할 때 저널을 재생해 두고, sqlmap을 읽어 등록하는 SQL 중 저널에 있는 키는 저널의 SQL로 바꿔 등록한다.
+public class JournalingSqlRegistry implements UpdatableSqlRegistry, IndexedSqlRegistry {
+    private static final Log log = LogFactory.getLog(JournalingSqlRegistry.class);
+
+    private final UpdatableSqlRegistry sqlRegistry;
+    private final SqlUpdateJournal journal;
+    private final Map<String, String> journaled;
+    private long compactionThreshold = 1024 * 1024;
+    private Executor compactionExecutor = JournalingSqlRegistry::startCompactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // journaled는 저널 파일을 재생한 결과와 같고, committed는 그중 레지스트리에 적용까지 성공한 수정만 반영한다.
+    private final Map<String, String> committed;
+    private final Map<String, Long> lastWritten = new HashMap<>();
+    private long issued;
+    private long applied;
+
+    public JournalingSqlRegistry(UpdatableSqlRegistry sqlRegistry, SqlUpdateJournal journal) {
+        this.sqlRegistry = sqlRegistry;
+        this.journal = journal;
+        try {
+            this.journaled = journal.replay();
+            this.committed = new HashMap<>(this.journaled);
+        } catch (IOException e) {
+            throw new IllegalStateException("SQL 수정 저널을 읽을 수 없습니다.", e);
+        }
+    }
+
+    // 저널이 이 크기(바이트)를 넘으면 스냅샷으로 합친다.
+    public void setCompactionThreshold(long compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // 합치는 일은 수정한 스레드가 아니라 이 Executor에서 한다. 기본은 매번 데몬 스레드를 하나 띄운다.
+    public void setCompactionExecutor(Executor compactionExecutor) {
+        this.compactionExecutor = compactionExecutor;
+    }
+
+    private static void startCompactor(Runnable task) {
+        Thread thread = new Thread(task, "sql-journal-compactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        return sqlRegistry.findSql(key);
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlNotFoundException {
+        if (sqlRegistry instanceof IndexedSqlRegistry) {
+            return ((IndexedSqlRegistry)sqlRegistry).getSqlHandle(key);
+        }
+        findSql(key);
+        return () -> {
+            try {
+                return findSql(key);
+            } catch (SqlNotFoundException e) {
+                throw new SqlRetrievalFailureException(e);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void registerSql(String key, String sql) {
+        sqlRegistry.registerSql(key, journaled.getOrDefault(key, sql));
+    }
+
+    @Override
+    public synchronized void registerSql(Map<String, String> sqlmap) {
+        Map<String, String> substituted = new LinkedHashMap<>(sqlmap);
+        substituted.replaceAll((key, sql) -> journaled.getOrDefault(key, sql));
+        sqlRegistry.registerSql(substituted);
+    }
+
+    // sqlmap을 읽지 않고 미리 채워진 레지스트리(매핑한 스냅샷)를 쓰면 registerSql()로 바꿔 끼울 기회가 없으므로,
+    // 시작할 때 저널에 남은 SQL만 직접 등록한다. sqlmap을 읽을 때처럼 레지스트리에 없는 키는 등록하지 않는다.
+    public synchronized void registerJournaledSql() {
+        Map<String, String> existing = new LinkedHashMap<>();
+        journaled.forEach((key, sql) -> {
+            try {
+                sqlRegistry.findSql(key);
+                existing.put(key, sql);
+            } catch (SqlNotFoundException e) {
+                log.warn(key + "는 레지스트리에 없으므로 저널의 SQL을 등록하지 않습니다.");
+            }
+        });
+        if (!existing.isEmpty()) {
+            sqlRegistry.registerSql(existing);
+        }
+    }
+
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        updateSql(Collections.singletonMap(key, sql));
+    }
+
+    @Override
+    public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        journal(sqlmap, sqlRegistry::updateSql, true);
+    }
+
+    // 지운 키는 삭제 레코드로 남긴다. 재시작하면 sqlmap에 없는 키이므로 등록되지 않고, 다시 추가되면 sqlmap의 SQL이 쓰인다.
+    @Override
+    public void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        Map<String, String> records = new LinkedHashMap<>(sqlmap);
+        for (String key : removed) {
+            records.put(key, null);
+        }
+        journal(records, changes -> sqlRegistry.mergeSql(sqlmap, removed), false);
+    }
+
+    // 먼저 저널에 기록하고 디스크에 내린 뒤에 적용한다. 디스크에 내리는 일은 락 밖에서 다른 수정과 묶어서 한다.
+    // 적용은 저널에 기록한 순서대로 해야 재시작 후 재생한 결과가 지금 상태와 같다.
+    private void journal(Map<String, String> sqlmap, Consumer<Map<String, String>> update, boolean requireExisting) {
+        long sequence;
+        long ticket;
+        synchronized (this) {
+            if (requireExisting) {
+                for (String key : sqlmap.keySet()) {
+                    try {
+                        sqlRegistry.findSql(key);
+                    } catch (SqlNotFoundException e) {
+                        throw new SqlUpdateFailureException(key + "에 해당하는 SQL을 찾을 수 없습니다.", e);
+                    }
+                }
+            }
+            sequence = write(sqlmap);
+            apply(journaled, sqlmap);
+            ticket = ++issued;
+            for (String key : sqlmap.keySet()) {
+                lastWritten.put(key, ticket);
+            }
+        }
+
+        RuntimeException failure = null;
+        try {
+            journal.sync(sequence);
+        } catch (IOException e) {
+            failure = new SqlUpdateFailureException("SQL 수정 내용을 저널에 기록할 수 없습니다.", e);
+        }
+
+        long compensation = 0;
+        synchronized (this) {
+            try {
+                awaitTurn(ticket);
+                if (failure == null) {
+                    try {
+                        update.accept(sqlmap);
+                        apply(committed, sqlmap);
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+                if (failure != null) {
+                    compensation = revert(sqlmap, ticket, failure);
+                }
+            } finally {
+                lastWritten.values().removeIf(written -> written == ticket);
+                applied = ticket;
+                notifyAll();
+            }
+        }
+
+        if (failure != null) {
+            if (compensation > 0) {
+                try {
+                    journal.sync(compensation);
+                } catch (IOException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+            throw failure;
+        }
+        if (journal.size() > compactionThreshold && compacting.compareAndSet(false, true)) {
+            compactionExecutor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    // 값이 null인 키는 삭제 레코드와 같이 지운다.
+    private static void apply(Map<String, String> sqls, Map<String, String> records) {
+        records.forEach((key, sql) -> {
+            if (sql == null) {
+                sqls.remove(key);
+            } else {
+                sqls.put(key, sql);
+            }
+        });
+    }
+
+    private long write(Map<String, String> sqlmap) {
+        try {
+            return journal.write(sqlmap);
+        } catch (IOException e) {
+            throw new SqlUpdateFailureException("SQL 수정 내용을 저널에 기록할 수 없습니다.", e);
+        }
+    }
+
+    // 앞선 수정이 모두 적용될 때까지 기다린다. 차례를 건너뛰면 뒤의 수정이 모두 멈추므로 인터럽트는 미뤄 둔다.
+    private void awaitTurn(long ticket) {
+        boolean interrupted = false;
+        while (applied != ticket - 1) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 적용하지 못한 수정은 그 앞까지 성공한 수정으로 저널의 값을 되돌려서 재시작할 때 재생되지 않게 한다.
+    // 저널에 없던 키는 삭제 레코드를 남겨 sqlmap의 SQL이 다시 쓰이게 한다.
+    // 뒤의 수정이 같은 키를 이미 기록했으면 그 레코드가 이 수정을 덮어쓰므로 되돌리지 않는다.
+    private long revert(Map<String, String> sqlmap, long ticket, RuntimeException failure) {
+        Map<String, String> restored = new LinkedHashMap<>();
+        for (String key : sqlmap.keySet()) {
+            if (lastWritten.get(key) == ticket) {
+                restored.put(key, committed.get(key));
+            }
+        }
+        if (restored.isEmpty()) {
+            return 0;
+        }
+
+        apply(journaled, restored);
+        try {
+            return journal.write(restored);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            return 0;
+        }
+    }
+
+    // 지금까지의 저널을 스냅샷으로 합친다. 스냅샷을 저장하는 동안에도 SQL을 수정할 수 있다.
+    public void compact() {
+        Map<String, String> sqls;
+        long upTo;
+        synchronized (this) {
+            sqls = new HashMap<>(journaled);
+            upTo = journal.size();
+        }
+        try {
+            journal.compact(sqls, upTo);
+        } catch (IOException e) {
+            // 합치지 못해도 저널은 그대로 남아 있으므로 다음에 다시 시도한다.
+            log.warn("SQL 수정 저널을 스냅샷으로 합치지 못했습니다.", e);
+        }
+    }
+}
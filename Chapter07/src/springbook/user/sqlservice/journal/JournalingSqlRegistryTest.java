@@ -0,0 +1,230 @@
+package springbook.user.sqlservice.journal;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import springbook.user.sqlservice.AbstractUpdatableSqlRegistryTest;
+import springbook.user.sqlservice.CopyOnWriteSqlRegistry;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class JournalingSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    SqlUpdateJournal journal;
+    JournalingSqlRegistry sqlRegistry;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        sqlRegistry = open();
+        return sqlRegistry;
+    }
+
+    @Test
+    public void updatesSurviveRestart() throws IOException, SqlNotFoundException {
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        sqlRegistry.updateSql("KEY3", "Modified3");
+        restart();
+
+        checkRestarted("Modified1", "SQL2", "Modified3");
+    }
+
+    @Test
+    public void compactIntoSnapshot() throws IOException, SqlNotFoundException {
+        sqlRegistry.setCompactionThreshold(0);
+        sqlRegistry.setCompactionExecutor(Runnable::run);
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        sqlRegistry.updateSql("KEY2", "Modified2");
+
+        assertThat(Files.size(journalFile()), is(0L));
+        assertThat(Files.exists(folder.getRoot().toPath().resolve(SqlUpdateJournal.SNAPSHOT_FILE)), is(true));
+
+        restart();
+        checkRestarted("Modified1", "Modified2", "SQL3");
+
+        sqlRegistry.updateSql("KEY3", "Modified3");
+        restart();
+        checkRestarted("Modified1", "Modified2", "Modified3");
+    }
+
+    @Test
+    public void keepRecordsWrittenDuringCompaction() throws IOException, SqlNotFoundException {
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        Map<String, String> compacted = Collections.singletonMap("KEY1", "Modified1");
+        long upTo = journal.size();
+        sqlRegistry.updateSql("KEY2", "Modified2");
+
+        journal.compact(compacted, upTo);
+        assertThat(Files.size(journalFile()), is(journal.size()));
+
+        sqlRegistry.updateSql("KEY3", "Modified3");
+        restart();
+        checkRestarted("Modified1", "Modified2", "Modified3");
+    }
+
+    @Test
+    public void failedUpdateIsNotReplayed() throws IOException, SqlNotFoundException {
+        journal.close();
+        journal = new SqlUpdateJournal(folder.getRoot().toPath());
+        sqlRegistry = new JournalingSqlRegistry(new CopyOnWriteSqlRegistry() {
+            @Override
+            public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+                if (sqlmap.containsValue("Broken")) {
+                    throw new SqlUpdateFailureException("적용할 수 없는 SQL입니다.");
+                }
+                super.updateSql(sqlmap);
+            }
+        }, journal);
+        sqlRegistry.registerSql("KEY1", "SQL1");
+        sqlRegistry.registerSql("KEY2", "SQL2");
+        sqlRegistry.registerSql("KEY3", "SQL3");
+
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        for (String key : new String[] { "KEY1", "KEY2" }) {
+            try {
+                sqlRegistry.updateSql(key, "Broken");
+                fail();
+            } catch (SqlUpdateFailureException expected) {
+            }
+        }
+        assertThat(sqlRegistry.findSql("KEY2"), is("SQL2"));
+
+        restart();
+        checkRestarted("Modified1", "SQL2", "SQL3");
+
+        // 수정한 적 없는 키는 저널에 남지 않으므로 sqlmap을 고치면 고친 SQL이 쓰인다.
+        journal.close();
+        sqlRegistry = open();
+        sqlRegistry.registerSql("KEY2", "Fixed2");
+        assertThat(sqlRegistry.findSql("KEY2"), is("Fixed2"));
+    }
+
+    @Test
+    public void unknownKeyIsNotJournaled() throws IOException {
+        try {
+            sqlRegistry.updateSql("UNKNOWN", "Modified");
+            fail();
+        } catch (SqlUpdateFailureException expected) {
+        }
+        assertThat(Files.size(journalFile()), is(0L));
+    }
+
+    // 미리 채워진 레지스트리는 sqlmap을 다시 등록하지 않으므로 저널의 SQL만 등록한다.
+    @Test
+    public void registerJournaledSqlIntoPopulatedRegistry() throws IOException, SqlNotFoundException {
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        sqlRegistry.updateSql("KEY3", "Modified3");
+        journal.close();
+
+        CopyOnWriteSqlRegistry populated = new CopyOnWriteSqlRegistry();
+        populated.registerSql("KEY1", "SQL1");
+        populated.registerSql("KEY2", "SQL2");
+        journal = new SqlUpdateJournal(folder.getRoot().toPath());
+        sqlRegistry = new JournalingSqlRegistry(populated, journal);
+        sqlRegistry.registerJournaledSql();
+
+        assertThat(sqlRegistry.findSql("KEY1"), is("Modified1"));
+        assertThat(sqlRegistry.findSql("KEY2"), is("SQL2"));
+        try {
+            sqlRegistry.findSql("KEY3");
+            fail();
+        } catch (SqlNotFoundException expected) {
+        }
+    }
+
+    // sqlmap에서 지웠다가 다시 추가한 키는 지우기 전에 수정한 SQL이 아니라 sqlmap의 SQL을 쓴다.
+    @Test
+    public void removalIsJournaled() throws IOException, SqlNotFoundException {
+        sqlRegistry.updateSql("KEY2", "Modified2");
+        sqlRegistry.mergeSql(Collections.emptyMap(), Collections.singleton("KEY2"));
+
+        restart();
+        checkRestarted("SQL1", "SQL2", "SQL3");
+    }
+
+    @Test
+    public void discardTornRecord() throws IOException, SqlNotFoundException {
+        sqlRegistry.updateSql("KEY1", "Modified1");
+        long validSize = Files.size(journalFile());
+        journal.close();
+        Files.write(journalFile(), new byte[] { 0, 0, 0, 100, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        restart();
+        assertThat(Files.size(journalFile()), is(validSize));
+        checkRestarted("Modified1", "SQL2", "SQL3");
+
+        sqlRegistry.updateSql("KEY2", "Modified2");
+        restart();
+        checkRestarted("Modified1", "Modified2", "SQL3");
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            String key = "KEY" + i;
+            Thread thread = new Thread(() -> {
+                for (int n = 0; n < 100; n++) {
+                    sqlRegistry.updateSql(key, key + "-" + n);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        restart();
+        checkRestarted("KEY1-99", "KEY2-99", "KEY3-99");
+    }
+
+    private JournalingSqlRegistry open() {
+        try {
+            journal = new SqlUpdateJournal(folder.getRoot().toPath());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new JournalingSqlRegistry(new CopyOnWriteSqlRegistry(), journal);
+    }
+
+    // 재시작하면 sqlmap의 원래 SQL이 다시 등록된다.
+    private void restart() throws IOException {
+        journal.close();
+        sqlRegistry = open();
+        sqlRegistry.registerSql("KEY1", "SQL1");
+        sqlRegistry.registerSql("KEY2", "SQL2");
+        sqlRegistry.registerSql("KEY3", "SQL3");
+    }
+
+    private void checkRestarted(String expected1, String expected2, String expected3) throws SqlNotFoundException {
+        assertThat(sqlRegistry.findSql("KEY1"), is(expected1));
+        assertThat(sqlRegistry.findSql("KEY2"), is(expected2));
+        assertThat(sqlRegistry.findSql("KEY3"), is(expected3));
+    }
+
+    private Path journalFile() {
+        return folder.getRoot().toPath().resolve(SqlUpdateJournal.JOURNAL_FILE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+}
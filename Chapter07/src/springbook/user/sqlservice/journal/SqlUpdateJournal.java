@@ -0,0 +1,270 @@
+package springbook.user.sqlservice.journal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import springbook.user.sqlservice.compiled.CompiledSqlmapWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * SQL 수정 내역을 추가만 하는 저널 파일에 기록하고, 커지면 컴파일된 sqlmap 포맷의 스냅샷으로 합친다.
+ *
+ * <pre>
+ * 저널 레코드: int length, int crc32, payload
+ * payload: int count, count x (int keyLength, key, int sqlLength, sql)  -- UTF-8
+ * sqlLength가 -1이면 그 키의 수정 내역을 지운다는 뜻이다.
+ * </pre>
+ */
+public class SqlUpdateJournal implements Closeable {
+    private static final Log log = LogFactory.getLog(SqlUpdateJournal.class);
+
+    public static final String JOURNAL_FILE = "sqlmap.journal";
+    public static final String SNAPSHOT_FILE = "sqlmap.snapshot";
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private FileChannel channel;
+    private final Object forceLock = new Object();
+    private final Object compactLock = new Object();
+
+    private long size;
+    private long written;
+    private volatile long forced;
+
+    public SqlUpdateJournal(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.channel = openJournal();
+    }
+
+    private FileChannel openJournal() throws IOException {
+        return FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // 스냅샷에 저널을 차례로 덮어쓴 결과를 돌려준다.
+    // 기록 도중 죽어서 마지막 레코드가 깨져 있으면 그 레코드부터 잘라내고 이어서 기록한다.
+    public synchronized Map<String, String> replay() throws IOException {
+        Map<String, String> sqls = readSnapshot();
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int)crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(payload);
+                String sql = readString(payload);
+                if (sql == null) {
+                    sqls.remove(key);
+                } else {
+                    sqls.put(key, sql);
+                }
+            }
+            buffer.position(start + RECORD_HEADER_SIZE + length);
+        }
+
+        size = buffer.position();
+        if (size < channel.size()) {
+            log.warn(JOURNAL_FILE + "의 " + size + " 바이트 이후는 완전히 기록되지 않아 버립니다.");
+            channel.truncate(size);
+            channel.force(true);
+        }
+        channel.position(size);
+        return sqls;
+    }
+
+    private Map<String, String> readSnapshot() throws IOException {
+        Map<String, String> sqls = new HashMap<>();
+        if (!Files.exists(snapshotPath)) {
+            return sqls;
+        }
+
+        // 스냅샷은 항상 새 파일로 교체되므로 매핑해 둔 채로 내용이 바뀌는 일은 없다.
+        try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = snapshot.map(FileChannel.MapMode.READ_ONLY, 0, snapshot.size());
+            if (buffer.getInt() != CompiledSqlmapWriter.MAGIC || buffer.getInt() != CompiledSqlmapWriter.VERSION) {
+                throw new IOException(SNAPSHOT_FILE + "은 지원하지 않는 sqlmap 포맷입니다.");
+            }
+
+            int count = buffer.getInt();
+            int dataStart = CompiledSqlmapWriter.HEADER_SIZE + count * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+            for (int i = 0; i < count; i++) {
+                int entry = CompiledSqlmapWriter.HEADER_SIZE + i * CompiledSqlmapWriter.INDEX_ENTRY_SIZE;
+                String key = decode(buffer, dataStart + buffer.getInt(entry), buffer.getInt(entry + 4));
+                String sql = decode(buffer, dataStart + buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+                sqls.put(key, sql);
+            }
+        }
+        return sqls;
+    }
+
+    // 레코드를 쓰기만 하고 디스크에 내리지는 않는다. 돌려준 번호로 sync()를 호출해야 기록이 보장된다.
+    // SQL이 null인 키는 재생할 때 지워진다.
+    public synchronized long write(Map<String, String> sqlmap) throws IOException {
+        List<byte[]> strings = new ArrayList<>(sqlmap.size() * 2);
+        int length = 4;
+        for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] sql = entry.getValue() == null ? null : entry.getValue().getBytes(StandardCharsets.UTF_8);
+            strings.add(key);
+            strings.add(sql);
+            length += 8 + key.length + (sql == null ? 0 : sql.length);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.putInt(sqlmap.size());
+        for (byte[] string : strings) {
+            if (string == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(string.length);
+                record.put(string);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putInt(4, (int)crc.getValue());
+        record.flip();
+
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        size += record.limit();
+        return ++written;
+    }
+
+    // 그룹 커밋: 먼저 락을 잡은 스레드가 그때까지 쓰인 레코드를 한 번에 디스크에 내리고,
+    // 기다리던 스레드는 자기 레코드가 이미 내려졌으면 force 없이 돌아간다.
+    public void sync(long sequence) throws IOException {
+        if (forced >= sequence) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= sequence) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            channel.force(false);
+            forced = target;
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    // sqls는 저널의 처음 upTo 바이트까지 재생한 상태여야 한다. 이를 스냅샷으로 저장하고 저널에서 그 부분을 버린다.
+    // 시간이 걸리는 스냅샷 저장은 락 없이 하므로 그동안에도 다른 스레드가 저널에 기록할 수 있다.
+    // 스냅샷을 교체한 뒤 저널을 줄이기 전에 죽어도, 이미 스냅샷에 반영된 레코드를 한 번 더 재생할 뿐이라 결과는 같다.
+    public void compact(Map<String, String> sqls, long upTo) throws IOException {
+        synchronized (compactLock) {
+            CompiledSqlmapWriter writer = new CompiledSqlmapWriter();
+            sqls.forEach(writer::registerSql);
+            writer.save(snapshotPath);
+
+            synchronized (forceLock) {
+                synchronized (this) {
+                    retainAfter(upTo);
+                }
+            }
+        }
+    }
+
+    // upTo 이후의 레코드만 새 파일에 옮겨 담고 원자적으로 교체하므로 도중에 죽어도 저널이 깨지지 않는다.
+    private void retainAfter(long upTo) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate((int)(size - upTo));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, upTo + tail.position()) < 0) {
+                break;
+            }
+        }
+        tail.flip();
+
+        Path temp = Files.createTempFile(journalPath.getParent(), JOURNAL_FILE, ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (tail.hasRemaining()) {
+                    out.write(tail);
+                }
+                out.force(true);
+            }
+            Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        channel.close();
+        channel = openJournal();
+        size = channel.size();
+        channel.position(size);
+        // 옮겨 담은 레코드는 새 파일과 함께 디스크에 내려졌다.
+        forced = written;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        String string = decode(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
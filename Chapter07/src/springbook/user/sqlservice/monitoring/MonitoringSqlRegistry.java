@@ -0,0 +1,100 @@
+package springbook.user.sqlservice.monitoring;
+
+import springbook.user.sqlservice.IndexedSqlRegistry;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlRegistry;
+import springbook.user.sqlservice.SqlRetrievalFailureException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MonitoringSqlRegistry implements UpdatableSqlRegistry, IndexedSqlRegistry {
+    private final SqlRegistry sqlRegistry;
+    private final SqlStatistics statistics;
+
+    public MonitoringSqlRegistry(SqlRegistry sqlRegistry, SqlStatistics statistics) {
+        this.sqlRegistry = sqlRegistry;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        long start = System.nanoTime();
+        try {
+            String sql = sqlRegistry.findSql(key);
+            statistics.recordHit(key, System.nanoTime() - start);
+            return sql;
+        } catch (SqlNotFoundException e) {
+            statistics.recordMiss(key, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlNotFoundException {
+        if (!(sqlRegistry instanceof IndexedSqlRegistry)) {
+            findSql(key);
+            return () -> {
+                try {
+                    return findSql(key);
+                } catch (SqlNotFoundException e) {
+                    throw new SqlRetrievalFailureException(e);
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        SqlHandle handle;
+        try {
+            handle = ((IndexedSqlRegistry)sqlRegistry).getSqlHandle(key);
+        } catch (SqlNotFoundException e) {
+            statistics.recordMiss(key, System.nanoTime() - start);
+            throw e;
+        }
+
+        // 핸들로 읽을 때는 키로 카운터를 찾지 않도록 카운터를 미리 꺼내 둔다.
+        LongAdder hitCounter = statistics.hitCounter(key);
+        return () -> {
+            long handleStart = System.nanoTime();
+            String sql = handle.getSql();
+            statistics.recordHit(hitCounter, System.nanoTime() - handleStart);
+            return sql;
+        };
+    }
+
+    @Override
+    public void registerSql(String key, String sql) {
+        sqlRegistry.registerSql(key, sql);
+    }
+
+    @Override
+    public void registerSql(Map<String, String> sqlmap) {
+        sqlRegistry.registerSql(sqlmap);
+    }
+
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        getUpdatableSqlRegistry().updateSql(key, sql);
+    }
+
+    @Override
+    public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        getUpdatableSqlRegistry().updateSql(sqlmap);
+    }
+
+    @Override
+    public void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        getUpdatableSqlRegistry().mergeSql(sqlmap, removed);
+    }
+
+    private UpdatableSqlRegistry getUpdatableSqlRegistry() {
+        if (!(sqlRegistry instanceof UpdatableSqlRegistry)) {
+            throw new SqlUpdateFailureException(sqlRegistry.getClass().getSimpleName() + "는 SQL 수정을 지원하지 않습니다");
+        }
+        return (UpdatableSqlRegistry)sqlRegistry;
+    }
+}
@@ -0,0 +1,73 @@
+package springbook.user.sqlservice.monitoring;
+
+import org.junit.Test;
+import springbook.user.sqlservice.AbstractUpdatableSqlRegistryTest;
+import springbook.user.sqlservice.CopyOnWriteSqlRegistry;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MonitoringSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    SqlStatistics statistics;
+    MonitoringSqlRegistry sqlRegistry;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        statistics = new SqlStatistics();
+        sqlRegistry = new MonitoringSqlRegistry(new CopyOnWriteSqlRegistry(), statistics);
+        return sqlRegistry;
+    }
+
+    @Test
+    public void countHitsAndMisses() throws SqlNotFoundException {
+        sqlRegistry.findSql("KEY1");
+        sqlRegistry.findSql("KEY1");
+        sqlRegistry.findSql("KEY2");
+        try {
+            sqlRegistry.findSql("KEY9");
+            fail();
+        } catch (SqlNotFoundException e) {}
+
+        SqlHandle handle = sqlRegistry.getSqlHandle("KEY3");
+        handle.getSql();
+        handle.getSql();
+
+        assertThat(statistics.getHitCount(), is(5L));
+        assertThat(statistics.getMissCount(), is(1L));
+        assertThat(statistics.getHitCounts().get("KEY1"), is(2L));
+        assertThat(statistics.getHitCounts().get("KEY3"), is(2L));
+        assertThat(statistics.getMissCounts().get("KEY9"), is(1L));
+
+        long recorded = 0;
+        for (long count : statistics.getLatencyHistogram()) {
+            recorded += count;
+        }
+        assertThat(recorded, is(6L));
+
+        statistics.reset();
+        handle.getSql();
+        assertThat(statistics.getHitCount(), is(1L));
+        assertThat(statistics.getHitCounts().get("KEY3"), is(1L));
+        assertThat(statistics.getMissCount(), is(0L));
+    }
+
+    @Test
+    public void limitTrackedMissKeys() {
+        statistics.setMaxTrackedMissKeys(2);
+        for (int i = 0; i < 10; i++) {
+            try {
+                sqlRegistry.findSql("UNKNOWN" + (i % 5));
+                fail();
+            } catch (SqlNotFoundException e) {}
+        }
+
+        assertThat(statistics.getMissCounts().size(), is(2));
+        assertThat(statistics.getMissCounts().get("UNKNOWN0"), is(2L));
+        assertThat(statistics.getUntrackedMissCount(), is(6L));
+        assertThat(statistics.getMissCount(), is(10L));
+    }
+}
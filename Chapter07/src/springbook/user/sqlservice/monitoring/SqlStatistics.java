@@ -0,0 +1,142 @@
+package springbook.user.sqlservice.monitoring;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SqlStatistics implements SqlStatisticsMXBean {
+    // 0번 버킷은 1us 미만, i번 버킷은 [2^(i-1), 2^i)us, 마지막 버킷은 그 이상을 모두 센다.
+    public static final int LATENCY_BUCKETS = 24;
+
+    private final ConcurrentMap<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> misses = new ConcurrentHashMap<>();
+    // 없는 키는 호출하는 쪽이 얼마든지 만들어낼 수 있으므로 키별로 세는 수에 상한을 두고 나머지는 한 곳에서 센다.
+    private final LongAdder untrackedMisses = new LongAdder();
+    private int maxTrackedMissKeys = 1000;
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+    public SqlStatistics() {
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    public void setMaxTrackedMissKeys(int maxTrackedMissKeys) {
+        this.maxTrackedMissKeys = maxTrackedMissKeys;
+    }
+
+    public LongAdder hitCounter(String key) {
+        return counter(hits, key);
+    }
+
+    public void recordHit(String key, long elapsedNanos) {
+        recordHit(hitCounter(key), elapsedNanos);
+    }
+
+    public void recordHit(LongAdder hitCounter, long elapsedNanos) {
+        hitCounter.increment();
+        recordLatency(elapsedNanos);
+    }
+
+    public void recordMiss(String key, long elapsedNanos) {
+        missCounter(key).increment();
+        recordLatency(elapsedNanos);
+    }
+
+    // 동시에 새 키가 들어오면 상한을 조금 넘을 수 있지만, 맵이 계속 커지지는 않는다.
+    private LongAdder missCounter(String key) {
+        LongAdder counter = misses.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (misses.size() >= maxTrackedMissKeys) {
+            return untrackedMisses;
+        }
+        return misses.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private void recordLatency(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        int bucket = micros <= 0 ? 0 : Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        latency[bucket].increment();
+    }
+
+    // 대부분은 이미 카운터가 있으므로 락을 잡을 수 있는 computeIfAbsent 전에 get으로 먼저 찾는다.
+    private LongAdder counter(ConcurrentMap<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    @Override
+    public long getHitCount() {
+        return sum(hits);
+    }
+
+    @Override
+    public long getMissCount() {
+        return sum(misses) + untrackedMisses.sum();
+    }
+
+    @Override
+    public long getUntrackedMissCount() {
+        return untrackedMisses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getHitCounts() {
+        return snapshot(hits);
+    }
+
+    @Override
+    public Map<String, Long> getMissCounts() {
+        return snapshot(misses);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            histogram[i] = latency[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long[] getLatencyBucketUpperBoundsMicros() {
+        long[] bounds = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS - 1; i++) {
+            bounds[i] = 1L << i;
+        }
+        bounds[LATENCY_BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    // 핸들이 카운터를 직접 들고 있으므로 맵을 비우지 않고 값만 0으로 만든다.
+    @Override
+    public void reset() {
+        hits.values().forEach(LongAdder::reset);
+        misses.values().forEach(LongAdder::reset);
+        untrackedMisses.reset();
+        for (LongAdder bucket : latency) {
+            bucket.reset();
+        }
+    }
+
+    private long sum(Map<String, LongAdder> counters) {
+        long sum = 0;
+        for (LongAdder counter : counters.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    private Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+}
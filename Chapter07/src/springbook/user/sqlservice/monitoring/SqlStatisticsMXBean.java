@@ -0,0 +1,14 @@
+package springbook.user.sqlservice.monitoring;
+
+import java.util.Map;
+
+public interface SqlStatisticsMXBean {
+    long getHitCount();
+    long getMissCount();
+    Map<String, Long> getHitCounts();
+    Map<String, Long> getMissCounts();
+    long getUntrackedMissCount();
+    long[] getLatencyHistogram();
+    long[] getLatencyBucketUpperBoundsMicros();
+    void reset();
+}
@@ -0,0 +1,29 @@
+package springbook.user.sqlservice.replication;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+// 같은 JVM 안의 레지스트리끼리 수정을 주고받는다. 여러 노드를 한 머신에서 시험할 때 사용한다.
+public class InProcessSqlUpdateTransport implements SqlUpdateTransport {
+    private final List<Consumer<SqlUpdate>> listeners = new CopyOnWriteArrayList<>();
+    private Executor executor = Runnable::run;
+
+    // 기본은 publish를 호출한 스레드에서 바로 전달한다.
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void publish(SqlUpdate update) {
+        for (Consumer<SqlUpdate> listener : listeners) {
+            executor.execute(() -> listener.accept(update));
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<SqlUpdate> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,143 @@
+package springbook.user.sqlservice.replication;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import springbook.user.sqlservice.IndexedSqlRegistry;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlRetrievalFailureException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// 이 노드에서 수정한 SQL을 다른 노드에 보내고, 다른 노드에서 온 수정을 반영한다.
+// 키마다 마지막으로 반영한 수정의 버전을 기억해서 더 새로운 수정만 반영하므로,
+// 같은 수정이 여러 번 오거나 순서가 바뀌어 와도 모든 노드가 같은 SQL로 수렴한다.
+public class ReplicatingSqlRegistry implements UpdatableSqlRegistry, IndexedSqlRegistry {
+    private static final Log log = LogFactory.getLog(ReplicatingSqlRegistry.class);
+
+    private final String nodeId;
+    private final UpdatableSqlRegistry sqlRegistry;
+    private final SqlUpdateTransport transport;
+
+    // 모두 this로 보호한다.
+    private final Map<String, SqlUpdate> appliedUpdates = new HashMap<>();
+    private long clock;
+
+    public ReplicatingSqlRegistry(String nodeId, UpdatableSqlRegistry sqlRegistry, SqlUpdateTransport transport) {
+        this.nodeId = nodeId;
+        this.sqlRegistry = sqlRegistry;
+        this.transport = transport;
+        transport.subscribe(this::apply);
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        return sqlRegistry.findSql(key);
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlNotFoundException {
+        if (sqlRegistry instanceof IndexedSqlRegistry) {
+            return ((IndexedSqlRegistry)sqlRegistry).getSqlHandle(key);
+        }
+        findSql(key);
+        return () -> {
+            try {
+                return findSql(key);
+            } catch (SqlNotFoundException e) {
+                throw new SqlRetrievalFailureException(e);
+            }
+        };
+    }
+
+    // 각 노드가 sqlmap을 직접 읽어 등록하므로 등록은 전파하지 않는다.
+    @Override
+    public void registerSql(String key, String sql) {
+        sqlRegistry.registerSql(key, sql);
+    }
+
+    @Override
+    public void registerSql(Map<String, String> sqlmap) {
+        sqlRegistry.registerSql(sqlmap);
+    }
+
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        updateSql(Collections.singletonMap(key, sql));
+    }
+
+    @Override
+    public void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        publish(sqlmap, sqlRegistry::updateSql);
+    }
+
+    // 새 키는 각 노드가 자신의 sqlmap에서 읽으므로, 다른 노드에는 그 노드에 있는 키의 수정만 반영된다.
+    // 삭제도 각 노드가 자신의 sqlmap을 다시 읽어 반영하므로 전파하지 않는다.
+    @Override
+    public void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        publish(sqlmap, changes -> sqlRegistry.mergeSql(changes, removed));
+    }
+
+    // 다른 노드의 락과 얽히지 않도록 전송은 락 밖에서 한다.
+    private void publish(Map<String, String> sqlmap, Consumer<Map<String, String>> localUpdate) {
+        SqlUpdate update;
+        synchronized (this) {
+            localUpdate.accept(sqlmap);
+            if (sqlmap.isEmpty()) {
+                return;
+            }
+            update = new SqlUpdate(nodeId, ++clock, sqlmap);
+            for (String key : sqlmap.keySet()) {
+                appliedUpdates.put(key, update);
+            }
+        }
+        transport.publish(update);
+    }
+
+    void apply(SqlUpdate update) {
+        if (nodeId.equals(update.getNodeId())) {
+            return;
+        }
+
+        synchronized (this) {
+            clock = Math.max(clock, update.getVersion());
+
+            Map<String, String> newer = new HashMap<>();
+            for (Map.Entry<String, String> entry : update.getSqls().entrySet()) {
+                SqlUpdate applied = appliedUpdates.get(entry.getKey());
+                if (applied == null || update.compareTo(applied) > 0) {
+                    newer.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (newer.isEmpty()) {
+                return;
+            }
+
+            try {
+                sqlRegistry.updateSql(newer);
+            } catch (SqlUpdateFailureException e) {
+                // 이 노드의 sqlmap에 없는 키가 섞여 있으면 있는 키만 반영한다.
+                log.warn(update.getNodeId() + " 노드에서 온 SQL 수정 일부를 반영할 수 없습니다: " + e.getMessage());
+                newer.entrySet().removeIf(entry -> !updateQuietly(entry.getKey(), entry.getValue()));
+            }
+            for (String key : newer.keySet()) {
+                appliedUpdates.put(key, update);
+            }
+        }
+    }
+
+    private boolean updateQuietly(String key, String sql) {
+        try {
+            sqlRegistry.updateSql(key, sql);
+            return true;
+        } catch (SqlUpdateFailureException e) {
+            return false;
+        }
+    }
+}
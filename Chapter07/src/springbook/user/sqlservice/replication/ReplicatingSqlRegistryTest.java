@@ -0,0 +1,105 @@
+package springbook.user.sqlservice.replication;
+
+import org.junit.Test;
+import springbook.user.sqlservice.AbstractUpdatableSqlRegistryTest;
+import springbook.user.sqlservice.ConcurrentHashMapSqlRegistry;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReplicatingSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    InProcessSqlUpdateTransport transport;
+    ReplicatingSqlRegistry node1;
+    ReplicatingSqlRegistry node2;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        transport = new InProcessSqlUpdateTransport();
+        node1 = createNode("node1");
+        node2 = createNode("node2");
+        return node1;
+    }
+
+    private ReplicatingSqlRegistry createNode(String nodeId) {
+        ReplicatingSqlRegistry node = new ReplicatingSqlRegistry(nodeId, new ConcurrentHashMapSqlRegistry(), transport);
+        node.registerSql("KEY1", "SQL1");
+        node.registerSql("KEY2", "SQL2");
+        node.registerSql("KEY3", "SQL3");
+        return node;
+    }
+
+    @Test
+    public void propagateToPeer() throws SqlNotFoundException {
+        node1.updateSql("KEY1", "Modified1");
+        node2.updateSql("KEY2", "Modified2");
+
+        checkNode(node1, "Modified1", "Modified2", "SQL3");
+        checkNode(node2, "Modified1", "Modified2", "SQL3");
+    }
+
+    @Test
+    public void ignoreDuplicateAndStaleUpdates() throws SqlNotFoundException {
+        SqlUpdate older = new SqlUpdate("node3", 1, Collections.singletonMap("KEY1", "Older"));
+        SqlUpdate newer = new SqlUpdate("node3", 2, Collections.singletonMap("KEY1", "Newer"));
+
+        transport.publish(newer);
+        transport.publish(newer);
+        transport.publish(older);
+
+        checkNode(node1, "Newer", "SQL2", "SQL3");
+        checkNode(node2, "Newer", "SQL2", "SQL3");
+
+        node2.updateSql("KEY1", "Modified1");
+        checkNode(node1, "Modified1", "SQL2", "SQL3");
+    }
+
+    @Test
+    public void skipUnknownKeys() throws SqlNotFoundException {
+        SqlUpdate update = new SqlUpdate("node3", 1, Collections.singletonMap("KEY1", "Modified1"));
+        node2.registerSql("KEY4", "SQL4");
+        transport.publish(new SqlUpdate("node2", 1, Collections.singletonMap("KEY4", "Modified4")));
+        transport.publish(update);
+
+        checkNode(node1, "Modified1", "SQL2", "SQL3");
+    }
+
+    @Test
+    public void concurrentUpdatesConverge() throws Exception {
+        ExecutorService delivery = Executors.newFixedThreadPool(4);
+        transport.setExecutor(delivery);
+
+        List<Thread> threads = new ArrayList<>();
+        for (ReplicatingSqlRegistry node : new ReplicatingSqlRegistry[] { node1, node2 }) {
+            Thread thread = new Thread(() -> {
+                for (int n = 0; n < 200; n++) {
+                    node.updateSql("KEY1", node.hashCode() + "-" + n);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        delivery.shutdown();
+        delivery.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(node1.findSql("KEY1"), is(node2.findSql("KEY1")));
+    }
+
+    private void checkNode(ReplicatingSqlRegistry node, String expected1, String expected2, String expected3)
+            throws SqlNotFoundException {
+        assertThat(node.findSql("KEY1"), is(expected1));
+        assertThat(node.findSql("KEY2"), is(expected2));
+        assertThat(node.findSql("KEY3"), is(expected3));
+    }
+}
@@ -0,0 +1,36 @@
+package springbook.user.sqlservice.replication;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// 한 노드에서 한 번에 수정한 SQL들. 버전은 노드 사이의 램포트 시계 값이고, 같은 버전이면 노드 ID로 순서를 정한다.
+public class SqlUpdate implements Comparable<SqlUpdate> {
+    private final String nodeId;
+    private final long version;
+    private final Map<String, String> sqls;
+
+    public SqlUpdate(String nodeId, long version, Map<String, String> sqls) {
+        this.nodeId = nodeId;
+        this.version = version;
+        this.sqls = Collections.unmodifiableMap(new HashMap<>(sqls));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, String> getSqls() {
+        return sqls;
+    }
+
+    @Override
+    public int compareTo(SqlUpdate other) {
+        int result = Long.compare(version, other.version);
+        return result != 0 ? result : nodeId.compareTo(other.nodeId);
+    }
+}
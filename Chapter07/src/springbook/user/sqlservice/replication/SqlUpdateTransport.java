@@ -0,0 +1,9 @@
+package springbook.user.sqlservice.replication;
+
+import java.util.function.Consumer;
+
+// 구현은 같은 수정을 여러 번 보내거나 순서를 바꿔 보내도 된다. 받는 쪽에서 버전을 비교해 걸러낸다.
+public interface SqlUpdateTransport {
+    void publish(SqlUpdate update);
+    void subscribe(Consumer<SqlUpdate> listener);
+}
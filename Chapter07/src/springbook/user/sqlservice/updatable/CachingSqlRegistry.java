@@ -0,0 +1,105 @@
+package springbook.user.sqlservice.updatable;
+
+import springbook.user.sqlservice.CopyOnWriteSqlRegistry;
+import springbook.user.sqlservice.IndexedSqlRegistry;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class CachingSqlRegistry implements UpdatableSqlRegistry, IndexedSqlRegistry {
+    private final UpdatableSqlRegistry sqlRegistry;
+    private final CopyOnWriteSqlRegistry cache;
+
+    public CachingSqlRegistry(UpdatableSqlRegistry sqlRegistry) {
+        this(sqlRegistry, new CopyOnWriteSqlRegistry());
+    }
+
+    public CachingSqlRegistry(UpdatableSqlRegistry sqlRegistry, CopyOnWriteSqlRegistry cache) {
+        this.sqlRegistry = sqlRegistry;
+        this.cache = cache;
+    }
+
+    @Override
+    public String findSql(String key) throws SqlNotFoundException {
+        try {
+            return cache.findSql(key);
+        } catch (SqlNotFoundException e) {
+            return loadSql(key);
+        }
+    }
+
+    @Override
+    public SqlHandle getSqlHandle(String key) throws SqlNotFoundException {
+        findSql(key);
+        return cache.getSqlHandle(key);
+    }
+
+    // 캐시를 채우는 동안 수정이 끼어들어 오래된 SQL이 캐시에 남지 않도록 수정 메소드와 같은 락을 사용한다.
+    private synchronized String loadSql(String key) throws SqlNotFoundException {
+        try {
+            return cache.findSql(key);
+        } catch (SqlNotFoundException e) {
+            String sql = sqlRegistry.findSql(key);
+            cache.registerSql(key, sql);
+            return sql;
+        }
+    }
+
+    @Override
+    public synchronized void registerSql(String key, String sql) {
+        sqlRegistry.registerSql(key, sql);
+        cache.registerSql(key, sql);
+    }
+
+    @Override
+    public synchronized void registerSql(Map<String, String> sqlmap) {
+        sqlRegistry.registerSql(sqlmap);
+        cache.registerSql(sqlmap);
+    }
+
+    // 캐시도 updateSql로 바꿔야 VersionedSqlRegistry가 수정한 트랜잭션의 스냅샷을 다시 고정한다.
+    @Override
+    public void updateSql(String key, String sql) throws SqlUpdateFailureException {
+        updateSql(Collections.singletonMap(key, sql));
+    }
+
+    @Override
+    public synchronized void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        // 원본 레지스트리의 수정이 실패하면 예외가 전파되므로 캐시는 손대지 않은 채로 남는다.
+        sqlRegistry.updateSql(sqlmap);
+        cache.updateSql(cached(sqlmap));
+    }
+
+    // 지운 키는 캐시에서도 지워서 캐시가 지운 SQL을 계속 돌려주지 않게 한다.
+    @Override
+    public synchronized void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        sqlRegistry.mergeSql(sqlmap, removed);
+        cache.mergeSql(cached(sqlmap), removed);
+    }
+
+    // 캐시에 없는 키는 다음 조회 때 원본에서 새 값을 읽어오므로 캐시된 키만 한 번에 교체한다.
+    private Map<String, String> cached(Map<String, String> sqlmap) {
+        Map<String, String> cached = new HashMap<>();
+        for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+            if (isCached(entry.getKey())) {
+                cached.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return cached;
+    }
+
+    private boolean isCached(String key) {
+        try {
+            cache.findSql(key);
+            return true;
+        } catch (SqlNotFoundException e) {
+            return false;
+        }
+    }
+}
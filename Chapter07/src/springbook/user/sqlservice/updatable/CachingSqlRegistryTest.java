@@ -0,0 +1,104 @@
+package springbook.user.sqlservice.updatable;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import springbook.user.sqlservice.AbstractUpdatableSqlRegistryTest;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CachingSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    EmbeddedDatabase db;
+    EmbeddedDbSqlRegistry embeddedDbSqlRegistry;
+    CachingSqlRegistry sqlRegistry;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        db = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .addScript("classpath:springbook/user/sqlservice/updatable/sqlRegistrySchema.sql")
+                .build();
+
+        embeddedDbSqlRegistry = new EmbeddedDbSqlRegistry();
+        embeddedDbSqlRegistry.setDataSource(db);
+
+        sqlRegistry = new CachingSqlRegistry(embeddedDbSqlRegistry);
+        return sqlRegistry;
+    }
+
+    @Test
+    public void transactionalUpdate() throws SqlNotFoundException {
+        checkFindResult("SQL1", "SQL2", "SQL3");
+
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY1", "Modified1");
+        sqlmap.put("KEY9999!@#$", "Modified9999");
+
+        try {
+            sqlRegistry.updateSql(sqlmap);
+            fail();
+        } catch (SqlUpdateFailureException e) {}
+
+        checkFindResult("SQL1", "SQL2", "SQL3");
+        assertThat(embeddedDbSqlRegistry.findSql("KEY1"), is("SQL1"));
+    }
+
+    @Test
+    public void updateAfterCached() throws SqlNotFoundException {
+        checkFindResult("SQL1", "SQL2", "SQL3");
+
+        sqlRegistry.updateSql("KEY2", "Modified2");
+
+        checkFindResult("SQL1", "Modified2", "SQL3");
+        assertThat(embeddedDbSqlRegistry.findSql("KEY2"), is("Modified2"));
+    }
+
+    @Test
+    public void handleSeesUpdates() throws SqlNotFoundException {
+        SqlHandle handle = sqlRegistry.getSqlHandle("KEY1");
+        assertThat(handle.getSql(), is("SQL1"));
+
+        Map<String, String> sqlmap = new HashMap<>();
+        sqlmap.put("KEY1", "Modified1");
+        sqlmap.put("KEY3", "Modified3");
+        sqlRegistry.updateSql(sqlmap);
+
+        assertThat(handle.getSql(), is("Modified1"));
+        checkFindResult("Modified1", "SQL2", "Modified3");
+    }
+
+    @Test
+    public void updateInTransactionWithVersionedCache() {
+        CachingSqlRegistry versioned = new CachingSqlRegistry(embeddedDbSqlRegistry, new VersionedSqlRegistry());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(db));
+
+        transactionTemplate.execute(status -> {
+            try {
+                assertThat(versioned.findSql("KEY1"), is("SQL1"));
+                versioned.updateSql("KEY1", "Modified1");
+                assertThat(versioned.findSql("KEY1"), is("Modified1"));
+            } catch (SqlNotFoundException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.shutdown();
+    }
+}
@@ -11,7 +11,11 @@ import springbook.user.sqlservice.SqlUpdateFailureException;
 import springbook.user.sqlservice.UpdatableSqlRegistry;
 
 import javax.sql.DataSource;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class EmbeddedDbSqlRegistry implements UpdatableSqlRegistry {
     JdbcTemplate jdbcTemplate;
@@ -35,18 +39,87 @@ public class EmbeddedDbSqlRegistry implements UpdatableSqlRegistry {
         transactionTemplate.execute(new TransactionCallbackWithoutResult() {
             @Override
             protected void doInTransactionWithoutResult(TransactionStatus transactionStatus) {
+                List<Object[]> batchArgs = new ArrayList<>(sqlmap.size());
                 for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
-                    updateSql(entry.getKey(), entry.getValue());
+                    batchArgs.add(new Object[] { entry.getValue(), entry.getKey() });
+                }
+
+                // 한 번의 배치로 보내고, 반영되지 않은 키가 있으면 예외를 던져 전체를 롤백한다.
+                int[] affected = jdbcTemplate.batchUpdate("update sqlmap set sql_ = ? where key_ = ?", batchArgs);
+                for (int i = 0; i < affected.length; i++) {
+                    String key = (String)batchArgs.get(i)[1];
+                    if (!isUpdated(affected[i], key)) {
+                        throw new SqlUpdateFailureException(key + "에 해당하는 SQL을 찾을 수 없습니다");
+                    }
                 }
             }
         });
     }
 
+    // 수정, 등록, 삭제를 한 트랜잭션에서 하므로 다른 쪽에서는 일부만 반영된 상태를 보지 않는다.
+    @Override
+    public void mergeSql(final Map<String, String> sqlmap, final Set<String> removed) throws SqlUpdateFailureException {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus transactionStatus) {
+                List<Object[]> updateArgs = new ArrayList<>(sqlmap.size());
+                for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+                    updateArgs.add(new Object[] { entry.getValue(), entry.getKey() });
+                }
+
+                int[] affected = jdbcTemplate.batchUpdate("update sqlmap set sql_ = ? where key_ = ?", updateArgs);
+                List<Object[]> insertArgs = new ArrayList<>();
+                for (int i = 0; i < affected.length; i++) {
+                    if (!isUpdated(affected[i], (String)updateArgs.get(i)[1])) {
+                        insertArgs.add(new Object[] { updateArgs.get(i)[1], updateArgs.get(i)[0] });
+                    }
+                }
+                if (!insertArgs.isEmpty()) {
+                    jdbcTemplate.batchUpdate("insert into sqlmap(key_, sql_) values (?, ?)", insertArgs);
+                }
+
+                if (!removed.isEmpty()) {
+                    List<Object[]> deleteArgs = new ArrayList<>(removed.size());
+                    for (String key : removed) {
+                        deleteArgs.add(new Object[] { key });
+                    }
+                    jdbcTemplate.batchUpdate("delete from sqlmap where key_ = ?", deleteArgs);
+                }
+            }
+        });
+    }
+
+    // 드라이버에 따라 배치 결과로 행 수 대신 SUCCESS_NO_INFO를 돌려주므로 그때는 키가 있는지 직접 확인한다.
+    // 같은 트랜잭션 안에서 확인하므로 방금 보낸 수정과 어긋나지 않는다.
+    private boolean isUpdated(int affected, String key) {
+        if (affected == Statement.EXECUTE_FAILED) {
+            throw new SqlUpdateFailureException(key + "의 SQL을 수정하지 못했습니다");
+        }
+        if (affected == Statement.SUCCESS_NO_INFO) {
+            return jdbcTemplate.queryForObject("select count(*) from sqlmap where key_ = ?", Integer.class, key) > 0;
+        }
+        return affected > 0;
+    }
+
     @Override
     public void registerSql(String key, String sql) {
         this.jdbcTemplate.update("insert into sqlmap(key_, sql_) values (?, ?)", key, sql);
     }
 
+    @Override
+    public void registerSql(final Map<String, String> sqlmap) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus transactionStatus) {
+                List<Object[]> batchArgs = new ArrayList<>(sqlmap.size());
+                for (Map.Entry<String, String> entry : sqlmap.entrySet()) {
+                    batchArgs.add(new Object[] { entry.getKey(), entry.getValue() });
+                }
+                jdbcTemplate.batchUpdate("insert into sqlmap(key_, sql_) values (?, ?)", batchArgs);
+            }
+        });
+    }
+
     @Override
     public String findSql(String key) throws SqlNotFoundException {
         try {
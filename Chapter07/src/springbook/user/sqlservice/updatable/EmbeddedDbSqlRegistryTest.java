@@ -2,6 +2,7 @@ package springbook.user.sqlservice.updatable;
 
 import org.junit.After;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
@@ -10,9 +11,17 @@ import springbook.user.sqlservice.SqlNotFoundException;
 import springbook.user.sqlservice.SqlUpdateFailureException;
 import springbook.user.sqlservice.UpdatableSqlRegistry;
 
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.fail;
 
 public class EmbeddedDbSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
@@ -48,6 +57,73 @@ public class EmbeddedDbSqlRegistryTest extends AbstractUpdatableSqlRegistryTest
         checkFindResult("SQL1", "SQL2", "SQL3");
     }
 
+    @Test
+    public void batchUpdateReportsMissingKey() throws SqlNotFoundException {
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        sqlmap.put("KEY1", "Modified1");
+        sqlmap.put("KEY2", "Modified2");
+        sqlmap.put("KEY9999!@#$", "Modified9999");
+        sqlmap.put("KEY3", "Modified3");
+
+        try {
+            sqlRegistry.updateSql(sqlmap);
+            fail();
+        } catch (SqlUpdateFailureException e) {
+            assertThat(e.getMessage(), containsString("KEY9999!@#$"));
+        }
+
+        checkFindResult("SQL1", "SQL2", "SQL3");
+    }
+
+    @Test
+    public void batchUpdateWithoutRowCounts() throws SqlNotFoundException {
+        sqlRegistry.jdbcTemplate = batchResultTemplate(Statement.SUCCESS_NO_INFO);
+
+        Map<String, String> sqlmap = new LinkedHashMap<>();
+        sqlmap.put("KEY1", "Modified1");
+        sqlmap.put("KEY3", "Modified3");
+        sqlRegistry.updateSql(sqlmap);
+        checkFindResult("Modified1", "SQL2", "Modified3");
+
+        sqlmap.put("KEY9999!@#$", "Modified9999");
+        try {
+            sqlRegistry.updateSql(sqlmap);
+            fail();
+        } catch (SqlUpdateFailureException e) {
+            assertThat(e.getMessage(), containsString("KEY9999!@#$"));
+        }
+
+        sqlRegistry.mergeSql(sqlmap);
+        assertThat(sqlRegistry.findSql("KEY9999!@#$"), is("Modified9999"));
+    }
+
+    @Test
+    public void batchUpdateExecuteFailed() throws SqlNotFoundException {
+        sqlRegistry.jdbcTemplate = batchResultTemplate(Statement.EXECUTE_FAILED);
+
+        try {
+            sqlRegistry.updateSql(Collections.singletonMap("KEY1", "Modified1"));
+            fail();
+        } catch (SqlUpdateFailureException e) {
+            assertThat(e.getMessage(), containsString("KEY1"));
+        }
+        checkFindResult("SQL1", "SQL2", "SQL3");
+    }
+
+    // 행 수를 알려주지 않거나 실패를 표시하는 드라이버처럼 배치 결과를 바꿔서 돌려준다.
+    private JdbcTemplate batchResultTemplate(int result) {
+        return new JdbcTemplate(db) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] affected = super.batchUpdate(sql, batchArgs);
+                if (sql.startsWith("update")) {
+                    Arrays.fill(affected, result);
+                }
+                return affected;
+            }
+        };
+    }
+
     @After
     public void tearDown() throws Exception {
         db.shutdown();
@@ -0,0 +1,94 @@
+package springbook.user.sqlservice.updatable;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springbook.user.sqlservice.CopyOnWriteSqlRegistry;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.SqlUpdateFailureException;
+
+import java.util.Map;
+import java.util.Set;
+
+// 트랜잭션 안에서 처음 읽은 스냅샷을 트랜잭션이 끝날 때까지 고정해서, 도중에 SQL이 수정돼도 같은 버전을 보게 한다.
+// 고정이 풀린 예전 스냅샷은 참조하는 곳이 없어지면 GC가 회수한다.
+public class VersionedSqlRegistry extends CopyOnWriteSqlRegistry {
+
+    @Override
+    protected Snapshot readSnapshot() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return super.readSnapshot();
+        }
+
+        PinnedSnapshot pinned = (PinnedSnapshot)TransactionSynchronizationManager.getResource(this);
+        if (pinned == null) {
+            pinned = new PinnedSnapshot(super.readSnapshot());
+            TransactionSynchronizationManager.bindResource(this, pinned);
+            TransactionSynchronizationManager.registerSynchronization(pinned);
+        }
+        return pinned.snapshot;
+    }
+
+    @Override
+    public synchronized void updateSql(Map<String, String> sqlmap) throws SqlUpdateFailureException {
+        super.updateSql(sqlmap);
+        repin();
+    }
+
+    @Override
+    public synchronized void mergeSql(Map<String, String> sqlmap, Set<String> removed) throws SqlUpdateFailureException {
+        super.mergeSql(sqlmap, removed);
+        repin();
+    }
+
+    // 캐시를 채우는 등록은 새 키만 추가하므로 고정을 유지한다. 새 키는 고정된 스냅샷에 없으면 최신 스냅샷에서 찾는다.
+    // 이미 있는 키를 바꾸는 등록은 수정과 같으므로 다시 고정한다.
+    @Override
+    public synchronized void registerSql(Map<String, String> sqlmap) {
+        boolean replacing = sqlmap.keySet().stream().anyMatch(this::isRegistered);
+        super.registerSql(sqlmap);
+        if (replacing) {
+            repin();
+        }
+    }
+
+    private boolean isRegistered(String key) {
+        try {
+            getSqlHandle(key);
+            return true;
+        } catch (SqlNotFoundException e) {
+            return false;
+        }
+    }
+
+    // 수정한 트랜잭션은 자신이 반영한 SQL을 볼 수 있도록 최신 스냅샷으로 다시 고정한다.
+    private void repin() {
+        PinnedSnapshot pinned = (PinnedSnapshot)TransactionSynchronizationManager.getResource(this);
+        if (pinned != null) {
+            pinned.snapshot = super.readSnapshot();
+        }
+    }
+
+    private class PinnedSnapshot extends TransactionSynchronizationAdapter {
+        Snapshot snapshot;
+
+        PinnedSnapshot(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        // REQUIRES_NEW 등으로 트랜잭션이 보류되면 새 트랜잭션은 자신의 스냅샷을 따로 고정한다.
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(VersionedSqlRegistry.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(VersionedSqlRegistry.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(VersionedSqlRegistry.this);
+        }
+    }
+}
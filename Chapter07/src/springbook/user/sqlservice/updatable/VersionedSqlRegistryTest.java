@@ -0,0 +1,131 @@
+package springbook.user.sqlservice.updatable;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import springbook.user.sqlservice.AbstractUpdatableSqlRegistryTest;
+import springbook.user.sqlservice.SqlHandle;
+import springbook.user.sqlservice.SqlNotFoundException;
+import springbook.user.sqlservice.UpdatableSqlRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class VersionedSqlRegistryTest extends AbstractUpdatableSqlRegistryTest {
+    EmbeddedDatabase db;
+    TransactionTemplate transactionTemplate;
+    VersionedSqlRegistry sqlRegistry;
+
+    @Override
+    protected UpdatableSqlRegistry createUpdatableSqlRegistry() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).build();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(db));
+
+        sqlRegistry = new VersionedSqlRegistry();
+        return sqlRegistry;
+    }
+
+    @Test
+    public void snapshotPinnedPerTransaction() throws Exception {
+        SqlHandle handle = sqlRegistry.getSqlHandle("KEY1");
+
+        transactionTemplate.execute(status -> {
+            checkFind("KEY1", "SQL1");
+            updateInAnotherThread("KEY1", "Modified1");
+
+            checkFind("KEY1", "SQL1");
+            assertThat(handle.getSql(), is("SQL1"));
+            return null;
+        });
+
+        checkFind("KEY1", "Modified1");
+        assertThat(handle.getSql(), is("Modified1"));
+    }
+
+    @Test
+    public void seeOwnUpdates() {
+        transactionTemplate.execute(status -> {
+            checkFind("KEY1", "SQL1");
+            sqlRegistry.updateSql("KEY1", "Modified1");
+            checkFind("KEY1", "Modified1");
+            return null;
+        });
+    }
+
+    @Test
+    public void newTransactionPinsItsOwnSnapshot() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        transactionTemplate.execute(status -> {
+            long version = sqlRegistry.getVersion();
+            checkFind("KEY1", "SQL1");
+            updateInAnotherThread("KEY1", "Modified1");
+
+            requiresNew.execute(innerStatus -> {
+                checkFind("KEY1", "Modified1");
+                assertThat(sqlRegistry.getVersion(), is(version + 1));
+                return null;
+            });
+
+            checkFind("KEY1", "SQL1");
+            assertThat(sqlRegistry.getVersion(), is(version));
+            return null;
+        });
+    }
+
+    @Test
+    public void keysAddedAfterPinning() {
+        transactionTemplate.execute(status -> {
+            checkFind("KEY1", "SQL1");
+            sqlRegistry.registerSql("KEY4", "SQL4");
+            checkFind("KEY4", "SQL4");
+            return null;
+        });
+    }
+
+    @Test
+    public void registerReplacingKeyRepins() {
+        transactionTemplate.execute(status -> {
+            checkFind("KEY1", "SQL1");
+            Map<String, String> sqlmap = new HashMap<>();
+            sqlmap.put("KEY1", "Modified1");
+            sqlmap.put("KEY4", "SQL4");
+            sqlRegistry.mergeSql(sqlmap);
+            checkFind("KEY1", "Modified1");
+            checkFind("KEY4", "SQL4");
+            return null;
+        });
+    }
+
+    private void checkFind(String key, String expected) {
+        try {
+            assertThat(sqlRegistry.findSql(key), is(expected));
+        } catch (SqlNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void updateInAnotherThread(String key, String sql) {
+        Thread thread = new Thread(() -> sqlRegistry.updateSql(key, sql));
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+}